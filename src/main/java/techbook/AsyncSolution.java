@@ -0,0 +1,323 @@
+package techbook;
+
+import techbook.business.*;
+import techbook.data.DBConnector;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Runs every Solution operation on an executor and returns a CompletableFuture of its result,
+ * so callers on an event loop do not block on the database.
+ * At most maxInFlight operations are running or waiting for a thread at any time. When all of them are taken,
+ * a call is queued for up to waitMillis until one finishes, and otherwise its future fails with
+ * RejectedExecutionException, so an overloaded database pushes back on the callers instead of queueing without bound.
+ * Submitting never blocks: the call returns its future at once, and the wait happens in the queue.
+ * The executor is pluggable: on a JDK with virtual threads, newExecutor(threads, true) runs each operation
+ * on its own virtual thread, and maxInFlight alone bounds the connections in use.
+ * With read replicas, consecutive operations may run on different threads, so a read is not guaranteed to see
+ * a write made by an earlier operation (see DBConnector.getReadConnection); submit the write and the read as one call
+ * to read your own writes.
+ */
+public class AsyncSolution {
+
+    private static AsyncSolution shared = null;
+
+    //times out the calls waiting for a slot
+    private static final ScheduledExecutorService TIMEOUTS = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "techbook-async-timeouts");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Executor executor;
+    private final long waitMillis;
+    //the free slots, and the calls waiting for one oldest first, both guarded by this
+    private int available;
+    private final ArrayDeque<Runnable> waiting = new ArrayDeque<>();
+
+    /**
+     * input: the executor to run the operations on, maximal number of operations running or waiting for a thread,
+     * how long a call may wait for a free slot before it is rejected (0 rejects at once)
+     */
+    public AsyncSolution(Executor executor, int maxInFlight, long waitMillis) {
+        if (maxInFlight <= 0)
+            throw new IllegalArgumentException("maxInFlight must be positive, got " + maxInFlight);
+        this.executor = executor;
+        this.available = maxInFlight;
+        this.waitMillis = waitMillis;
+    }
+
+    /**
+     * output: the instance configured by the async.* settings, created on first use.
+     * Its threads are daemons, so it never keeps the JVM alive
+     */
+    public static synchronized AsyncSolution getDefault() {
+        if (shared == null) {
+            //one thread per connection the database should see from this process
+            int threads = Integer.parseInt(DBConnector.getProperty("async.threads", "8"));
+            boolean virtualThreads = Boolean.parseBoolean(DBConnector.getProperty("async.virtualThreads", "false"));
+            shared = new AsyncSolution(newExecutor(threads, virtualThreads),
+                    Integer.parseInt(DBConnector.getProperty("async.maxInFlight", String.valueOf(threads * 8))),
+                    Long.parseLong(DBConnector.getProperty("async.waitMillis", "0")));
+        }
+        return shared;
+    }
+
+    /**
+     * input: number of threads, whether to use a virtual thread per operation instead when the JDK has them
+     * output: a fixed pool of daemon threads, or a virtual thread per task executor
+     */
+    public static ExecutorService newExecutor(int threads, boolean virtualThreads) {
+        if (virtualThreads) {
+            try {
+                //looked up reflectively, the project still compiles for Java 8
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                //no virtual threads before Java 21, fall back to platform threads
+            }
+        }
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "techbook-async-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public synchronized int availableSlots() {
+        return available;
+    }
+
+    private synchronized boolean stopWaiting(Runnable start) {
+        return waiting.remove(start);
+    }
+
+    //hands the slot of a finished call to the oldest waiting one, or frees it
+    private void release() {
+        Runnable next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                available++;
+                return;
+            }
+        }
+        next.run();
+    }
+
+    private <T> void run(Supplier<T> call, CompletableFuture<T> result) {
+        try {
+            executor.execute(() -> {
+                T value;
+                try {
+                    value = call.get();
+                } catch (Throwable t) {
+                    release();
+                    result.completeExceptionally(t);
+                    return;
+                }
+                //free the slot first, so whatever runs on completion may submit again
+                release();
+                result.complete(value);
+            });
+        } catch (RejectedExecutionException e) {
+            release();
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Runs any call, e.g. several Solution operations that belong together, under the same limits.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> run(call, result);
+        synchronized (this) {
+            if (available == 0) {
+                if (waitMillis <= 0) {
+                    result.completeExceptionally(new RejectedExecutionException("too many operations in flight"));
+                    return result;
+                }
+                waiting.add(start);
+                TIMEOUTS.schedule(() -> {
+                    if (stopWaiting(start))
+                        result.completeExceptionally(new RejectedExecutionException("too many operations in flight"));
+                }, waitMillis, TimeUnit.MILLISECONDS);
+                return result;
+            }
+            available--;
+        }
+        start.run();
+        return result;
+    }
+
+    public CompletableFuture<Void> createTables() {
+        return submit(() -> {
+            Solution.createTables();
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> clearTables() {
+        return submit(() -> {
+            Solution.clearTables();
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> dropTables() {
+        return submit(() -> {
+            Solution.dropTables();
+            return null;
+        });
+    }
+
+    public CompletableFuture<ReturnValue> addStudent(Student student) {
+        return submit(() -> Solution.addStudent(student));
+    }
+
+    public CompletableFuture<ReturnValue> deleteStudent(Integer studentId) {
+        return submit(() -> Solution.deleteStudent(studentId));
+    }
+
+    public CompletableFuture<Student> getStudentProfile(Integer studentId) {
+        return submit(() -> Solution.getStudentProfile(studentId));
+    }
+
+    public CompletableFuture<ReturnValue> updateStudentFaculty(Student student) {
+        return submit(() -> Solution.updateStudentFaculty(student));
+    }
+
+    public CompletableFuture<ReturnValue> addPost(Post post, String groupName) {
+        return submit(() -> Solution.addPost(post, groupName));
+    }
+
+    public CompletableFuture<ReturnValue> deletePost(Integer postId) {
+        return submit(() -> Solution.deletePost(postId));
+    }
+
+    public CompletableFuture<Post> getPost(Integer postId) {
+        return submit(() -> Solution.getPost(postId));
+    }
+
+    public CompletableFuture<ReturnValue> updatePost(Post post) {
+        return submit(() -> Solution.updatePost(post));
+    }
+
+    public CompletableFuture<Integer> getMutualFriendsCount(Integer studentId1, Integer studentId2) {
+        return submit(() -> Solution.getMutualFriendsCount(studentId1, studentId2));
+    }
+
+    public CompletableFuture<ReturnValue> rebuildMutualFriends() {
+        return submit(() -> Solution.rebuildMutualFriends());
+    }
+
+    public CompletableFuture<ReturnValue> archivePostMonths() {
+        return submit(() -> Solution.archivePostMonths());
+    }
+
+    public CompletableFuture<ReturnValue> makeAsFriends(Integer studentId1, Integer studentId2) {
+        return submit(() -> Solution.makeAsFriends(studentId1, studentId2));
+    }
+
+    public CompletableFuture<ReturnValue> makeAsNotFriends(Integer studentId1, Integer studentId2) {
+        return submit(() -> Solution.makeAsNotFriends(studentId1, studentId2));
+    }
+
+    public CompletableFuture<ReturnValue> likePost(Integer studentId, Integer postId) {
+        return submit(() -> Solution.likePost(studentId, postId));
+    }
+
+    public CompletableFuture<ReturnValue> unlikePost(Integer studentId, Integer postId) {
+        return submit(() -> Solution.unlikePost(studentId, postId));
+    }
+
+    public CompletableFuture<ReturnValue> joinGroup(Integer studentId, String groupName) {
+        return submit(() -> Solution.joinGroup(studentId, groupName));
+    }
+
+    public CompletableFuture<ReturnValue> leaveGroup(Integer studentId, String groupName) {
+        return submit(() -> Solution.leaveGroup(studentId, groupName));
+    }
+
+    public CompletableFuture<Feed> getStudentFeed(Integer id) {
+        return submit(() -> Solution.getStudentFeed(id));
+    }
+
+    public CompletableFuture<Feed> getGroupFeed(String groupName) {
+        return submit(() -> Solution.getGroupFeed(groupName));
+    }
+
+    public CompletableFuture<Feed> getStudentFeed(Integer id, int limit) {
+        return submit(() -> Solution.getStudentFeed(id, limit));
+    }
+
+    public CompletableFuture<Feed> getGroupFeed(String groupName, int limit) {
+        return submit(() -> Solution.getGroupFeed(groupName, limit));
+    }
+
+    public CompletableFuture<Stream<Post>> streamStudentFeed(Integer id) {
+        return submit(() -> Solution.streamStudentFeed(id));
+    }
+
+    public CompletableFuture<Stream<Post>> streamGroupFeed(String groupName) {
+        return submit(() -> Solution.streamGroupFeed(groupName));
+    }
+
+    public CompletableFuture<Feed> getTrendingPosts(Duration window, int k, String groupName) {
+        return submit(() -> Solution.getTrendingPosts(window, k, groupName));
+    }
+
+    public CompletableFuture<Feed> getTrendingPosts(Duration window, int k) {
+        return submit(() -> Solution.getTrendingPosts(window, k));
+    }
+
+    public CompletableFuture<ArrayList<TrendingPost>> getTrendingPostsEstimate(int k) {
+        return submit(() -> Solution.getTrendingPostsEstimate(k));
+    }
+
+    public CompletableFuture<Feed> searchPosts(String query, int limit, String groupName) {
+        return submit(() -> Solution.searchPosts(query, limit, groupName));
+    }
+
+    public CompletableFuture<Feed> searchPosts(Integer studentId, String query, int limit) {
+        return submit(() -> Solution.searchPosts(studentId, query, limit));
+    }
+
+    public CompletableFuture<ArrayList<Student>> getPeopleYouMayKnowList(Integer studentId) {
+        return submit(() -> Solution.getPeopleYouMayKnowList(studentId));
+    }
+
+    public CompletableFuture<ArrayList<RankedStudent>> getRankedPeopleYouMayKnowList(Integer studentId, int k) {
+        return submit(() -> Solution.getRankedPeopleYouMayKnowList(studentId, k));
+    }
+
+    public CompletableFuture<ArrayList<StudentIdPair>> getRemotelyConnectedPairs() {
+        return submit(() -> Solution.getRemotelyConnectedPairs());
+    }
+
+    public CompletableFuture<TreeMap<Integer, ArrayList<Student>>> getStudentsByDistance(Integer studentId, int k) {
+        return submit(() -> Solution.getStudentsByDistance(studentId, k));
+    }
+
+    public CompletableFuture<ArrayList<Student>> getStudentsWithinDistance(Integer studentId, int k) {
+        return submit(() -> Solution.getStudentsWithinDistance(studentId, k));
+    }
+
+    public CompletableFuture<TreeMap<Integer, Long>> getSeparationDistribution(int log2m) {
+        return submit(() -> Solution.getSeparationDistribution(log2m));
+    }
+}
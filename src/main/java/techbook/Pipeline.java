@@ -0,0 +1,71 @@
+package techbook;
+
+import techbook.data.DBConnector;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Queues Solution calls and runs them in order over one connection, instead of opening a connection per call.
+ * Every call keeps its own statements, transactions and return values; only the connection is shared.
+ * For example:
+ *     Pipeline p = new Pipeline();
+ *     CompletableFuture<ReturnValue> added = p.add(() -> Solution.addPost(post, "CS"));
+ *     CompletableFuture<Feed> feed = p.add(() -> Solution.getGroupFeed("CS", 10));
+ *     p.flush();
+ * The connection is closed at the end of flush(), so calls that return a Stream must not be queued.
+ */
+public class Pipeline {
+
+    private ArrayList<Runnable> queued = new ArrayList<>();
+
+    /**
+     * input: a call to run on flush()
+     * output: a future completed with the result of the call, or exceptionally if it threw
+     */
+    public <T> CompletableFuture<T> add(Supplier<T> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        queued.add(() -> {
+            try {
+                result.complete(operation.get());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    public int size() {
+        return queued.size();
+    }
+
+    /**
+     * Runs the queued calls in the order they were added, on the calling thread.
+     * If no connection can be opened, each call opens its own, as if it was called directly.
+     * output: the number of calls that ran
+     */
+    public int flush() {
+        ArrayList<Runnable> operations = queued;
+        queued = new ArrayList<>();
+        Connection c = DBConnector.getConnection();
+        if (c == null) {
+            operations.forEach(Runnable::run);
+            return operations.size();
+        }
+        Connection previous = DBConnector.pinConnection(c);
+        try {
+            operations.forEach(Runnable::run);
+        } finally {
+            DBConnector.pinConnection(previous);
+            try {
+                c.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        return operations.size();
+    }
+}
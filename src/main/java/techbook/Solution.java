@@ -2,15 +2,44 @@ package techbook;
 
 import com.sun.xml.internal.fastinfoset.tools.FI_SAX_Or_XML_SAX_SAXEvent;
 import techbook.business.*;
+import techbook.data.Cursor;
 import techbook.data.DBConnector;
+import techbook.data.ExistenceFilters;
+import techbook.data.FriendGraph;
+import techbook.data.GroupDictionary;
+import techbook.data.GroupFeedCache;
+import techbook.data.GroupMembers;
+import techbook.data.HyperLogLogCounters;
+import techbook.data.IndexedRowMapper;
+import techbook.data.LikeCounters;
+import techbook.data.LikeRollups;
+import techbook.data.MonthlyPartitions;
+import techbook.data.RoaringBitmap;
+import techbook.data.RowMapper;
+import techbook.data.TimelineMerger;
+import techbook.data.TrendingSketch;
 
 import static techbook.data.PostgreSQLErrorCodes.*;
 
+import java.net.URI;
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.stream.Stream;
 
 import static techbook.business.ReturnValue.*;
 
@@ -24,59 +53,236 @@ public class Solution {
         }
     }
 
+    //the words of a post for full text search, kept up to date by the database whenever text changes
+    private static final String TEXT_SEARCH = "textSearch tsvector GENERATED ALWAYS AS (to_tsvector('english', text)) STORED";
+
+    /*the tables of the students' data, split across the shards by their shard key when the data is sharded:
+     *{table, columns, constraints, constraints on rows a shard may not hold, shard key}.
+     *a student's groups, friendships, posts and likes are kept on the shard of the student*/
+    private static final String[][] TABLES = {
+            {"Students",
+                    "id integer NOT NULL, name text NOT NULL, faculty text NOT NULL",
+                    "PRIMARY KEY (id), CHECK (id > 0)",
+                    null,
+                    "id"},
+            /*groups are named by their ids in GroupNames, which is kept by the primary database*/
+            {"Groups",
+                    "groupId integer NOT NULL, studentId integer NOT NULL",
+                    "FOREIGN KEY (studentId) REFERENCES Students(id), PRIMARY KEY (groupId,studentId)",
+                    "FOREIGN KEY (groupId) REFERENCES GroupNames(id)",
+                    "studentId"},
+            /*every friendship is stored in both directions, so the friends of x are the (id1 = x) range of the key*/
+            {"Friends",
+                    "id1 integer NOT NULL, id2 integer NOT NULL",
+                    "FOREIGN KEY (id1) REFERENCES Students(id), CHECK (id1 <> id2), PRIMARY KEY (id1,id2)",
+                    "FOREIGN KEY (id2) REFERENCES Students(id)",
+                    "id1"},
+            {"posts",
+                    "id integer, author integer, text text NOT NULL, date TIMESTAMP NOT NULL, groupId integer NULL, " + TEXT_SEARCH,
+                    "PRIMARY KEY (id), CHECK (id > 0), FOREIGN KEY (author) REFERENCES Students(id)",
+                    null,
+                    "author"},
+            /*postDate is the date of the liked post, which places the like in the month of the post; likedAt is when it was liked*/
+            {"likes",
+                    "studentId integer, postId integer, postDate TIMESTAMP, likedAt TIMESTAMP NOT NULL DEFAULT LOCALTIMESTAMP",
+                    "FOREIGN KEY (studentId) REFERENCES Students(id), PRIMARY KEY (studentId,postId)",
+                    "FOREIGN KEY (postId) REFERENCES posts(id)",
+                    "studentId"}
+    };
+
+    /*posts and likes when they are partitioned by the month of the post: {..., the column partitioned by}.
+     *the keys of a partitioned table include that column, so PostIds keeps the post ids unique*/
+    private static final String[][] MONTHLY_TABLES = {
+            {"posts",
+                    "id integer, author integer, text text NOT NULL, date TIMESTAMP NOT NULL, groupId integer NULL, " + TEXT_SEARCH,
+                    "PRIMARY KEY (id,date), CHECK (id > 0), FOREIGN KEY (author) REFERENCES Students(id)",
+                    null,
+                    "author",
+                    "date"},
+            {"likes",
+                    "studentId integer, postId integer, postDate TIMESTAMP NOT NULL, likedAt TIMESTAMP NOT NULL DEFAULT LOCALTIMESTAMP",
+                    "FOREIGN KEY (studentId) REFERENCES Students(id), PRIMARY KEY (studentId,postId,postDate)",
+                    "FOREIGN KEY (postId,postDate) REFERENCES posts(id,date)",
+                    "studentId",
+                    "postDate"}
+    };
+
+    private static final MonthlyPartitions POST_MONTHS = new MonthlyPartitions("posts", "likes");
+
+    private static boolean partitionByMonth() {
+        return Boolean.parseBoolean(DBConnector.getProperty("posts.partitionByMonth", "false"));
+    }
+
+    private static String[][] tables() {
+        if (!partitionByMonth())
+            return TABLES;
+        String[][] tables = TABLES.clone();
+        for (String[] monthly : MONTHLY_TABLES)
+            for (int i = 0; i < tables.length; i++)
+                if (tables[i][0].equals(monthly[0]))
+                    tables[i] = monthly;
+        return tables;
+    }
+
+    /*let the top-N feeds read each author's and each group's posts newest first and stop early,
+     *and searchPosts find the posts of its words*/
+    private static final String[] INDEXES = {
+            "CREATE INDEX ON posts(author, date DESC)",
+            "CREATE INDEX ON posts(groupId, date DESC)",
+            "CREATE INDEX ON likes(postId)",
+            "CREATE INDEX ON posts USING GIN (textSearch)"
+    };
+
+    private static void execute(String sql, Connection c) throws SQLException {
+        try (PreparedStatement s = c.prepareStatement(sql)) {
+            s.execute();
+        }
+    }
+
+    private static String createTable(String[] table, boolean onShard) {
+        String constraints = onShard || table[3] == null ? table[2] : table[2] + ", " + table[3];
+        String partitioning = table.length > 5 ? String.format(" PARTITION BY RANGE (%s)", table[5]) : "";
+        return String.format("CREATE TABLE %s (%s, %s)%s", table[0], table[1], constraints, partitioning);
+    }
+
+    private static void createGroupNames(Connection c) throws SQLException {
+        execute("CREATE TABLE GroupNames\n" +
+                "(\n" +
+                "    id serial,\n" +
+                "    name text NOT NULL,\n" +
+                "    PRIMARY KEY (id),\n" +
+                "    UNIQUE (name)\n" +
+                ")", c);
+    }
+
+    private static void createMutualFriends(Connection c) throws SQLException {
+        execute("CREATE TABLE MutualFriends\n" +
+                "(\n" +
+                "    id1 integer NOT NULL,\n" +
+                "    id2 integer NOT NULL,\n" +
+                "    count integer NOT NULL,\n" +
+                "    CHECK (id1 > id2),\n" +
+                "    PRIMARY KEY (id1,id2)\n" +
+                ")", c);
+        execute("CREATE INDEX ON MutualFriends(id2)", c);
+    }
+
+    /*the id of every post, with the key that posts cannot check on its own when it is sharded or partitioned by month:
+     *addPost claims the id here in the statement that inserts the post*/
+    private static void createPostIds(Connection c) throws SQLException {
+        execute("CREATE TABLE PostIds\n" +
+                "(\n" +
+                "    id integer NOT NULL,\n" +
+                "    PRIMARY KEY (id)\n" +
+                ")", c);
+    }
+
+    //the striped like counts of LikeCounters, derived from likes like MutualFriends from Friends
+    private static void createPostLikes(Connection c) throws SQLException {
+        execute("CREATE TABLE PostLikes\n" +
+                "(\n" +
+                "    postId integer NOT NULL,\n" +
+                "    slot integer NOT NULL,\n" +
+                "    likes integer NOT NULL,\n" +
+                "    PRIMARY KEY (postId,slot)\n" +
+                ")", c);
+    }
+
+    //the likes per post and time bucket of LikeRollups; the index serves the posts of a group, or of no group, by time
+    private static void createLikeBuckets(Connection c) throws SQLException {
+        execute("CREATE TABLE LikeBuckets\n" +
+                "(\n" +
+                "    postId integer NOT NULL,\n" +
+                "    groupId integer NULL,\n" +
+                "    bucket TIMESTAMP NOT NULL,\n" +
+                "    likes integer NOT NULL,\n" +
+                "    PRIMARY KEY (postId,bucket)\n" +
+                ")", c);
+        execute("CREATE INDEX ON LikeBuckets(groupId, bucket)", c);
+    }
+
     public static void createTables() {
-        try (Connection c = DBConnector.getConnection();
-             PreparedStatement student = c.prepareStatement("CREATE TABLE Students\n" +
-                     "(\n" +
-                     "    id integer NOT NULL,\n" +
-                     "    name text NOT NULL,\n" +
-                     "    faculty text NOT NULL,\n" +
-                     "    PRIMARY KEY (id)," +
-                     "    CHECK (id > 0)\n" +
-                     ")");
-             PreparedStatement groups = c.prepareStatement("CREATE TABLE Groups\n" +
-                     "(\n" +
-                     "    name text NOT NULL,\n" +
-                     "    studentId integer NOT NULL,\n" +
-                     "    FOREIGN KEY (studentId) REFERENCES Students(id),\n" +
-                     "    PRIMARY KEY (name,studentId)\n" +
-                     ")");
-             PreparedStatement friends = c.prepareStatement("CREATE TABLE Friends\n" +
-                     "(\n" +
-                     "    id1 integer NOT NULL,\n" +
-                     "    id2 integer NOT NULL,\n" +
-                     "    FOREIGN KEY (id1) REFERENCES Students(id),\n" +
-                     "    FOREIGN KEY (id2) REFERENCES Students(id),\n" +
-                     "    CHECK (id1 > id2)," +
-                     "    PRIMARY KEY(id1,id2)\n" +
-                     ")");
-             PreparedStatement posts = c.prepareStatement("CREATE TABLE posts\n" +
-                     "(\n" +
-                     "    id integer,\n" +
-                     "    author integer,\n" +
-                     "    text text NOT NULL,\n" +
-                     "    date TIMESTAMP NOT NULL,\n" +
-                     "    groupName text NULL," +
-                     "    PRIMARY KEY (id),\n" +
-                     "    CHECK (id > 0),\n" +
-                     "    FOREIGN KEY (author) REFERENCES Students(id)\n" +
-                     ")");
-             PreparedStatement likes = c.prepareStatement("CREATE TABLE likes\n" +
-                     "(\n" +
-                     "    studentId integer,\n" +
-                     "    postId integer,\n" +
-                     "    FOREIGN KEY (studentId) REFERENCES Students(id),\n" +
-                     "    FOREIGN KEY (postId) REFERENCES posts(id),\n" +
-                     "    PRIMARY KEY (studentId,postId)\n" +
-                     ")")) {
-            student.execute();
-            groups.execute();
-            friends.execute();
-            posts.execute();
-            likes.execute();
+        POST_MONTHS.reset();
+        GROUP_IDS.clear();
+        TRENDING.reset();
+        boolean created = DBConnector.getShards().isEmpty() ? createLocalTables() : createShardedTables(DBConnector.getShards());
+        //the tables are known to be empty only if they were created here, else the members and the existence
+        //filters are loaded from them on first use
+        GROUP_MEMBERS.reset(created && useMemberBitmaps());
+        EXISTING.reset(created && useBloomFilters(), falsePositiveRate());
+    }
+
+    /*output: true iff all the tables were created*/
+    private static boolean createLocalTables() {
+        try (Connection c = DBConnector.getConnection()) {
+            createGroupNames(c);
+            for (String[] table : tables())
+                execute(createTable(table, false), c);
+            for (String index : INDEXES)
+                execute(index, c);
+            createMutualFriends(c);
+            createPostIds(c);
+            createPostLikes(c);
+            createLikeBuckets(c);
+            return true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /*
+     * Every shard holds its part of the tables, with the constraints it can check on its own rows.
+     * The primary database holds no rows of them: each table there is partitioned by hash of its shard key,
+     * and partition i is a postgres_fdw foreign table of shard i. So an operation on one student's data is
+     * sent to that student's shard only, and a feed or graph query scans the shards in parallel
+     * (async_capable) and merges their rows, all with the SQL of the unsharded tables.
+     * MutualFriends, PostLikes and LikeBuckets are derived data and stay on the primary, and so does PostIds,
+     * which no shard could check alone.
+     * output: true iff all the tables were created
+     */
+    private static boolean createShardedTables(List<String> shards) {
+        boolean created = true;
+        for (int i = 0; i < shards.size(); i++) {
+            try (Connection c = DBConnector.getShardConnection(i)) {
+                for (String[] table : tables())
+                    execute(createTable(table, true), c);
+                for (String index : INDEXES)
+                    execute(index, c);
+            } catch (SQLException e) {
+                e.printStackTrace();
+                created = false;
+            }
+        }
+        try (Connection c = DBConnector.getConnection()) {
+            execute("CREATE EXTENSION IF NOT EXISTS postgres_fdw", c);
+            createGroupNames(c);
+            for (int i = 0; i < shards.size(); i++) {
+                URI shard = URI.create(shards.get(i).substring("jdbc:".length()));
+                execute(String.format("CREATE SERVER shard%d FOREIGN DATA WRAPPER postgres_fdw\n" +
+                                "OPTIONS (host '%s', port '%d', dbname '%s', async_capable 'true')", i,
+                        shard.getHost(), shard.getPort() < 0 ? 5432 : shard.getPort(), shard.getPath().substring(1)), c);
+                execute(String.format("CREATE USER MAPPING FOR CURRENT_USER SERVER shard%d\n" +
+                                "OPTIONS (user '%s', password '%s')", i,
+                        DBConnector.getProperty("user", ""), DBConnector.getProperty("password", "")), c);
+            }
+            for (String[] table : tables()) {
+                execute(String.format("CREATE TABLE %s (%s) PARTITION BY HASH (%s)", table[0], table[1], table[4]), c);
+                for (int i = 0; i < shards.size(); i++)
+                    execute(String.format("CREATE FOREIGN TABLE %s_%d PARTITION OF %s\n" +
+                                    "FOR VALUES WITH (MODULUS %d, REMAINDER %d)\n" +
+                                    "SERVER shard%d OPTIONS (schema_name 'public', table_name '%s')",
+                            table[0], i, table[0], shards.size(), i, i, table[0].toLowerCase()), c);
+            }
+            createMutualFriends(c);
+            createPostIds(c);
+            createPostLikes(c);
+            createLikeBuckets(c);
         } catch (SQLException e) {
             e.printStackTrace();
+            created = false;
         }
+        return created;
     }
 
     private static PreparedStatement truncate(String table, Connection c) throws SQLException {
@@ -84,20 +290,37 @@ public class Solution {
     }
 
     public static void clearTables() {
+        boolean cleared = false;
         try (Connection c = DBConnector.getConnection();
              PreparedStatement student = truncate("Students", c);
              PreparedStatement groups = truncate("Groups", c);
              PreparedStatement friends = truncate("Friends", c);
              PreparedStatement posts = truncate("posts", c);
-             PreparedStatement likes = truncate("likes", c)) {
+             PreparedStatement likes = truncate("likes", c);
+             PreparedStatement mutualFriends = truncate("MutualFriends", c);
+             PreparedStatement groupNames = truncate("GroupNames", c);
+             PreparedStatement postIds = truncate("PostIds", c);
+             PreparedStatement postLikes = truncate("PostLikes", c);
+             PreparedStatement likeBuckets = truncate("LikeBuckets", c)) {
             student.execute();
             groups.execute();
             friends.execute();
             posts.execute();
             likes.execute();
+            mutualFriends.execute();
+            groupNames.execute();
+            postIds.execute();
+            postLikes.execute();
+            likeBuckets.execute();
+            cleared = true;
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        GROUP_IDS.clear();
+        GROUP_MEMBERS.reset(cleared && useMemberBitmaps());
+        EXISTING.reset(cleared && useBloomFilters(), falsePositiveRate());
+        TRENDING.reset();
+        GROUP_FEEDS.clear();
     }
 
     private static PreparedStatement drop(String table, Connection c) throws SQLException {
@@ -110,31 +333,66 @@ public class Solution {
              PreparedStatement groups = drop("Groups", c);
              PreparedStatement friends = drop("Friends", c);
              PreparedStatement posts = drop("posts", c);
-             PreparedStatement likes = drop("likes", c)) {
+             PreparedStatement likes = drop("likes", c);
+             PreparedStatement mutualFriends = drop("MutualFriends", c);
+             PreparedStatement groupNames = drop("GroupNames", c);
+             PreparedStatement postIds = drop("PostIds", c);
+             PreparedStatement postLikes = drop("PostLikes", c);
+             PreparedStatement likeBuckets = drop("LikeBuckets", c)) {
             student.execute();
             groups.execute();
             friends.execute();
             posts.execute();
             likes.execute();
+            mutualFriends.execute();
+            groupNames.execute();
+            postIds.execute();
+            postLikes.execute();
+            likeBuckets.execute();
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        for (int i = 0; i < DBConnector.getShards().size(); i++) {
+            try (Connection c = DBConnector.getConnection()) {
+                execute(String.format("DROP SERVER shard%d CASCADE", i), c);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            try (Connection c = DBConnector.getShardConnection(i)) {
+                for (String[] table : TABLES)
+                    execute(String.format("DROP TABLE %s CASCADE", table[0]), c);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        POST_MONTHS.reset();
+        GROUP_IDS.clear();
+        GROUP_MEMBERS.reset(false);
+        EXISTING.reset(false, falsePositiveRate());
+        TRENDING.reset();
+        GROUP_FEEDS.clear();
     }
 
-    private static PreparedStatement addToGroup(int id, String group, Connection c) throws SQLException {
-        PreparedStatement s = c.prepareStatement("INSERT INTO Groups\n" +
-                "VALUES(?,?)");
-        s.setString(1, group);
-        s.setInt(2, id);
-        return s;
-    }
-
+    /*the student, their faculty group and its name are inserted by one statement, so none is visible without the
+     *others. the foreign keys of Groups are checked at the end of the statement, after the student was inserted*/
     private static PreparedStatement addStudentStatement(Student student, Connection c) throws SQLException {
-        PreparedStatement s = c.prepareStatement("INSERT INTO Students\n" +
-                "VALUES(?,?,?);");
+        Integer known = GROUP_IDS.known(student.getFaculty());
+        PreparedStatement s = c.prepareStatement("WITH student AS (\n" +
+                "\tINSERT INTO Students\n" +
+                "\tVALUES(?,?,?)\n" +
+                "\tON CONFLICT DO NOTHING\n" +
+                "\tRETURNING id, faculty\n" +
+                "), faculty_group AS (\n" +
+                GroupDictionary.idQuery(known != null, "student") + "\n" +
+                "), faculty AS (\n" +
+                "\tINSERT INTO Groups SELECT faculty_group.id, student.id FROM student, faculty_group\n" +
+                "\tON CONFLICT DO NOTHING\n" +
+                ")\n" +
+                "SELECT (SELECT COUNT(*) FROM student), (SELECT id FROM faculty_group)");
         s.setInt(1, student.getId());
         s.setString(2, student.getName());
         s.setString(3, student.getFaculty());
+        s.setObject(4, known != null ? known : student.getFaculty());
         return s;
     }
 
@@ -149,14 +407,19 @@ public class Solution {
      */
     public static ReturnValue addStudent(Student student) {
         try (Connection c = DBConnector.getConnection();
-             PreparedStatement addStudent = addStudentStatement(student, c);
-             PreparedStatement addToFaculty = addToGroup(student.getId(), student.getFaculty(), c)) {
-            addStudent.execute();
-            addToFaculty.execute();
+             PreparedStatement addStudent = addStudentStatement(student, c)) {
+            ResultSet rs;
+            try (ExistenceFilters.Write write = EXISTING.write()) {
+                write.addStudent(student.getId());
+                rs = addStudent.executeQuery();
+            }
+            rs.next();
+            if (rs.getInt(1) == 0)
+                return ALREADY_EXISTS;
+            GROUP_IDS.learn(c, student.getFaculty(), rs.getInt(2));
+            GROUP_MEMBERS.added(rs.getInt(2), student.getId());
         } catch (SQLException e) {
             int sqlState = getSQLState(e);
-            if (sqlState == UNIQUE_VIOLATION.getValue())
-                return ALREADY_EXISTS;
             if (sqlState == NOT_NULL_VIOLATION.getValue() || sqlState == CHECK_VIOLATION.getValue())
                 return BAD_PARAMS;
             e.printStackTrace();
@@ -180,31 +443,59 @@ public class Solution {
         try (Connection c = DBConnector.getConnection();
              PreparedStatement deleteFromGroups = c.prepareStatement("DELETE FROM Groups\n" +
                      String.format("WHERE studentId = %d", studentId));
-             PreparedStatement deleteLikes = c.prepareStatement("DELETE FROM likes\n" +
-                     String.format("WHERE studentId = %d", studentId));
-             PreparedStatement deletePosts = c.prepareStatement("DELETE FROM posts\n" +
-                     String.format("WHERE author = %d", studentId));
+             PreparedStatement deleteLikes = c.prepareStatement("WITH unliked AS (\n" +
+                     "DELETE FROM likes\n" +
+                     String.format("WHERE studentId = %d\n", studentId) +
+                     "RETURNING postId, likedAt), counted AS (\n" +
+                     String.format(COUNT_LIKES, LikeCounters.slot(studentId, likeCounterSlots()), -1, "unliked") + ")\n" +
+                     LikeRollups.add("unliked JOIN posts ON posts.id = unliked.postId", -1, likeBucketSeconds()));
+             PreparedStatement deleteCounts = c.prepareStatement("DELETE FROM PostLikes\n" +
+                     String.format("WHERE postId IN (SELECT id FROM posts WHERE author = %d)", studentId));
+             PreparedStatement deleteRollups = c.prepareStatement("DELETE FROM LikeBuckets\n" +
+                     String.format("WHERE postId IN (SELECT id FROM posts WHERE author = %d)", studentId));
+             PreparedStatement deletePosts = c.prepareStatement("WITH deleted AS (\n" +
+                     "\tDELETE FROM posts\n" +
+                     String.format("\tWHERE author = %d\n", studentId) +
+                     "\tRETURNING id\n" +
+                     ")\n" +
+                     "DELETE FROM PostIds WHERE id IN (SELECT id FROM deleted)");
              PreparedStatement deleteFriends = c.prepareStatement("DELETE FROM friends\n" +
                      String.format("WHERE id1 = %d OR id2 = %d", studentId, studentId));
              PreparedStatement deleteStudent = c.prepareStatement("DELETE FROM Students\n" +
                      String.format("WHERE id = %d;", studentId))) {
-            deleteFromGroups.execute();
-            deleteLikes.execute();
-            deleteFriends.execute();
-            deletePosts.execute();
-            return deleteStudent.executeUpdate() != 0 ? OK : NOT_EXISTS;
+            c.setAutoCommit(false);
+            try {
+                deleteFromGroups.execute();
+                deleteLikes.execute();
+                if (maintainMutualFriends())
+                    removeFromMutualFriends(studentId, c);
+                int friendships = deleteFriends.executeUpdate() / 2;
+                deleteCounts.execute();
+                deleteRollups.execute();
+                int posts = deletePosts.executeUpdate();
+                boolean deleted = deleteStudent.executeUpdate() != 0;
+                c.commit();
+                GROUP_MEMBERS.removed(studentId);
+                EXISTING.deleted((deleted ? 1 : 0) + posts + friendships);
+                //the student's posts and likes may be in any group
+                GROUP_FEEDS.clear();
+                return deleted ? OK : NOT_EXISTS;
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
         } catch (SQLException e) {
             return ERROR;
         }
     }
 
-    private static Student makeStudent(ResultSet rs) throws SQLException {
+    private static final IndexedRowMapper<Student> STUDENT_MAPPER = new IndexedRowMapper<>(i -> rs -> {
         Student std = new Student();
-        std.setId(rs.getInt("id"));
-        std.setName(rs.getString("name"));
-        std.setFaculty(rs.getString("faculty"));
+        std.setId(rs.getInt(i[0]));
+        std.setName(rs.getString(i[1]));
+        std.setFaculty(rs.getString(i[2]));
         return std;
-    }
+    }, "id", "name", "faculty");
 
     /**
      * Returns the student profile by the given id
@@ -212,13 +503,13 @@ public class Solution {
      * output: The student profile in case the student exists. BadStudent otherwise
      */
     public static Student getStudentProfile(Integer studentId) {
-        try (Connection c = DBConnector.getConnection();
+        try (Connection c = DBConnector.getReadConnection();
              PreparedStatement s = c.prepareStatement("SELECT * FROM Students\n" +
                      String.format("WHERE id=%d;", studentId))) {
             ResultSet rs = s.executeQuery();
             if (!rs.next())
                 return Student.badStudent();
-            return makeStudent(rs);
+            return STUDENT_MAPPER.forResultSet(rs).map(rs);
         } catch (SQLException e) {
             return Student.badStudent();
         }
@@ -236,42 +527,138 @@ public class Solution {
      * ERROR in case of database error
      */
     public static ReturnValue updateStudentFaculty(Student student) {
+        if (student.getFaculty() == null)
+            return BAD_PARAMS;
+        Integer known = GROUP_IDS.known(student.getFaculty());
         try (Connection c = DBConnector.getConnection();
-             PreparedStatement checkFaculty = c.prepareStatement("SELECT COUNT(*)\n" +
-                     "FROM students\n" +
-                     "WHERE id = ? and faculty = ?");
-             PreparedStatement updateFaculty = c.prepareStatement("UPDATE students\n" +
-                     "SET faculty = ?\n" +
-                     "WHERE id = ?");
-             PreparedStatement addToFacultyGroup = addToGroup(student.getId(), student.getFaculty(), c)) {
-            checkFaculty.setInt(1, student.getId());
-            checkFaculty.setString(2, student.getFaculty());
-            ResultSet rs = checkFaculty.executeQuery();
-            if (!rs.next())
+             PreparedStatement s = c.prepareStatement("WITH student AS (\n" +
+                     "\tSELECT id FROM students WHERE id = ?\n" +
+                     "), updated AS (\n" +
+                     "\tUPDATE students\n" +
+                     "\tSET faculty = ?\n" +
+                     "\tWHERE id = ? AND faculty <> ?\n" +
+                     "\tRETURNING id, faculty\n" +
+                     "), faculty_group AS (\n" +
+                     GroupDictionary.idQuery(known != null, "updated") + "\n" +
+                     "), joined AS (\n" +
+                     "\tINSERT INTO Groups SELECT faculty_group.id, updated.id FROM updated, faculty_group\n" +
+                     "\tON CONFLICT DO NOTHING\n" +
+                     ")\n" +
+                     "SELECT (SELECT COUNT(*) FROM student), (SELECT COUNT(*) FROM updated), (SELECT id FROM faculty_group)")) {
+            s.setInt(1, student.getId());
+            s.setString(2, student.getFaculty());
+            s.setInt(3, student.getId());
+            s.setString(4, student.getFaculty());
+            s.setObject(5, known != null ? known : student.getFaculty());
+            ResultSet rs = s.executeQuery();
+            rs.next();
+            if (rs.getInt(1) == 0)
                 return NOT_EXISTS;
-            if (rs.getInt(1) > 0)
+            //the student is already in this faculty
+            if (rs.getInt(2) == 0)
                 return ALREADY_EXISTS;
-            updateFaculty.setString(1, student.getFaculty());
-            updateFaculty.setInt(2, student.getId());
-            updateFaculty.execute();
-            addToFacultyGroup.execute();
+            GROUP_IDS.learn(c, student.getFaculty(), rs.getInt(3));
+            GROUP_MEMBERS.added(rs.getInt(3), student.getId());
         } catch (SQLException e) {
             int sqlState = getSQLState(e);
             if (sqlState == FOREIGN_KEY_VIOLATION.getValue())
                 return NOT_EXISTS;
-            if (sqlState == NOT_NULL_VIOLATION.getValue())
-                return BAD_PARAMS;
-            if (sqlState == UNIQUE_VIOLATION.getValue())
-                /*this means the user was added to get group beforehand
-                 *but was not in the faculty until now*/
-                return OK;
-
             e.printStackTrace();
             return ERROR;
         }
         return OK;
     }
 
+    private static YearMonth oldestRetainedMonth() {
+        return MonthlyPartitions.oldestRetained(Integer.parseInt(DBConnector.getProperty("posts.retainedMonths", "0")));
+    }
+
+    /*the connections to the databases that store the rows of posts and likes: the shards when sharded, else c*/
+    private static List<Connection> postStorage(Connection c, List<Connection> shards) {
+        for (int i = 0; i < DBConnector.getShards().size(); i++)
+            shards.add(DBConnector.getShardConnection(i));
+        return shards.isEmpty() ? Collections.singletonList(c) : shards;
+    }
+
+    /*creates the partitions of the month of a new post where the rows are stored, on every shard when sharded.
+     *output: false iff the month of date is older than the retained months*/
+    private static boolean addPostMonth(LocalDateTime date, Connection c) throws SQLException {
+        YearMonth oldest = oldestRetainedMonth();
+        if (oldest != null && YearMonth.from(date).isBefore(oldest))
+            return false;
+        if (POST_MONTHS.isCreated(date))
+            return true;
+        List<Connection> shards = new ArrayList<>();
+        try {
+            POST_MONTHS.ensure(postStorage(c, shards), date);
+        } finally {
+            for (Connection shard : shards)
+                shard.close();
+        }
+        return true;
+    }
+
+    /**
+     * Archives the months of posts and likes older than the posts.retainedMonths retained ones, when posts are
+     * partitioned by month: their partitions are detached concurrently with the reads and writes of the tables,
+     * and the like counts, like buckets and ids of their posts are removed. Meant to run as maintenance,
+     * e.g. daily, not along with the operations on the posts.
+     * output: ReturnValue with the following conditions:
+     * OK in case of success, also when there is nothing to archive
+     * ERROR in case of database error
+     */
+    public static ReturnValue archivePostMonths() {
+        YearMonth oldest = oldestRetainedMonth();
+        if (!partitionByMonth() || oldest == null)
+            return OK;
+        List<Connection> shards = new ArrayList<>();
+        try (Connection c = DBConnector.getConnection()) {
+            List<Integer> archived = new ArrayList<>();
+            for (Connection storage : postStorage(c, shards)) {
+                for (String[] partition : POST_MONTHS.detachBefore(storage, oldest)) {
+                    if (!partition[0].equals("posts"))
+                        continue;
+                    try (PreparedStatement s = storage.prepareStatement("SELECT id FROM " + partition[1])) {
+                        ResultSet rs = s.executeQuery();
+                        while (rs.next())
+                            archived.add(rs.getInt(1));
+                    }
+                }
+            }
+            if (archived.isEmpty())
+                return OK;
+            c.setAutoCommit(false);
+            try (PreparedStatement deleteCounts = c.prepareStatement("DELETE FROM PostLikes WHERE postId = ANY(?)");
+                 PreparedStatement deleteRollups = c.prepareStatement("DELETE FROM LikeBuckets WHERE postId = ANY(?)");
+                 PreparedStatement deleteIds = c.prepareStatement("DELETE FROM PostIds WHERE id = ANY(?)")) {
+                Array ids = c.createArrayOf("integer", archived.toArray());
+                for (PreparedStatement s : Arrays.asList(deleteCounts, deleteRollups, deleteIds)) {
+                    s.setArray(1, ids);
+                    s.execute();
+                }
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+            for (Integer postId : archived)
+                TRENDING.removed(postId);
+            EXISTING.deleted(archived.size());
+            GROUP_FEEDS.clear();
+            return OK;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return ERROR;
+        } finally {
+            for (Connection shard : shards) {
+                try {
+                    shard.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
 
     /**
      * Adds a post to the database, and adds it to the relevant group if  groupName is given (i.e., it is not null)
@@ -285,25 +672,54 @@ public class Solution {
      * ERROR in case of database error
      */
     public static ReturnValue addPost(Post post, String groupName) {
+        //with the members of a known group loaded, a post of a non member is rejected before taking a connection
+        if (groupName != null && post.getAuthor() != null && useMemberBitmaps()) {
+            Integer groupId = GROUP_IDS.known(groupName);
+            if (groupId != null && Boolean.FALSE.equals(GROUP_MEMBERS.isMember(groupId, post.getAuthor())))
+                return NOT_EXISTS;
+        }
         try (Connection c = DBConnector.getConnection();
-             PreparedStatement checkInGroup = c.prepareStatement("SELECT COUNT(*)\n" +
-                     "FROM groups\n" +
-                     "WHERE name = ? and studentId = ?");
-             PreparedStatement addPost = c.prepareStatement("INSERT INTO posts\n" +
-                     "VALUES (?,?,?,?,?)")) {
+             /*the id is claimed in PostIds by the same statement, so of two posts with one id only one is inserted,
+              *whatever shards and months they are stored in*/
+             PreparedStatement addPost = c.prepareStatement("WITH claimed AS (\n" +
+                     "\tINSERT INTO PostIds VALUES (?)\n" +
+                     "\tON CONFLICT DO NOTHING\n" +
+                     "\tRETURNING id\n" +
+                     ")\n" +
+                     "INSERT INTO posts\n" +
+                     "SELECT id,?::integer,?,?::timestamp,?::integer FROM claimed\n" +
+                     "RETURNING date")) {
+            Integer groupId = GROUP_IDS.find(c, groupName);
             if (groupName != null) {
-                checkInGroup.setString(1, groupName);
-                checkInGroup.setInt(2, post.getAuthor());
-                ResultSet rs = checkInGroup.executeQuery();
-                if (!rs.next() || rs.getInt(1) == 0)
+                if (groupId == null || !isMember(groupId, post.getAuthor(), c))
                     return NOT_EXISTS;
             }
+            //a missing text or date is reported before an existing id, as the constraints of one table would
+            if (post.getText() == null || post.getDate() == null)
+                return BAD_PARAMS;
+            if (partitionByMonth() && !addPostMonth(post.getDate(), c))
+                return BAD_PARAMS;
             addPost.setInt(1, post.getId());
             addPost.setInt(2, post.getAuthor());
             addPost.setString(3, post.getText());
             addPost.setTimestamp(4,post.getTimeStamp());
-            addPost.setString(5, groupName);
-            addPost.execute();
+            addPost.setObject(5, groupId, Types.INTEGER);
+            ResultSet rs;
+            try (ExistenceFilters.Write write = EXISTING.write()) {
+                write.addPost(post.getId());
+                rs = addPost.executeQuery();
+            }
+            if (!rs.next())
+                return ALREADY_EXISTS;
+            if (groupName != null) {
+                Post added = new Post();
+                added.setId(post.getId());
+                added.setAuthor(post.getAuthor());
+                added.setText(post.getText());
+                added.setTimeStamp(rs.getTimestamp(1));
+                added.setLikes(0);
+                GROUP_FEEDS.added(groupName, added);
+            }
         } catch (SQLException e) {
             int sqlState = getSQLState(e);
             if (sqlState == CHECK_VIOLATION.getValue() || sqlState == NOT_NULL_VIOLATION.getValue())
@@ -331,25 +747,45 @@ public class Solution {
         try (Connection c = DBConnector.getConnection();
              PreparedStatement deleteLikes = c.prepareStatement("DELETE FROM likes\n" +
                      String.format("WHERE postId = %d", postId));
-             PreparedStatement deletePost = c.prepareStatement("DELETE FROM posts\n" +
-                     String.format("WHERE id = %d", postId))) {
+             PreparedStatement deleteCounts = c.prepareStatement("DELETE FROM PostLikes\n" +
+                     String.format("WHERE postId = %d", postId));
+             PreparedStatement deleteRollups = c.prepareStatement("DELETE FROM LikeBuckets\n" +
+                     String.format("WHERE postId = %d", postId));
+             PreparedStatement deletePost = c.prepareStatement("WITH deleted AS (\n" +
+                     "\tDELETE FROM posts\n" +
+                     String.format("\tWHERE id = %d\n", postId) +
+                     "\tRETURNING id, groupId\n" +
+                     "), released AS (\n" +
+                     "\tDELETE FROM PostIds WHERE id IN (SELECT id FROM deleted)\n" +
+                     ")\n" +
+                     "SELECT groupId FROM deleted")) {
             deleteLikes.execute();
-            return deletePost.executeUpdate() > 0 ? OK : NOT_EXISTS;
+            deleteCounts.execute();
+            deleteRollups.execute();
+            ResultSet rs = deletePost.executeQuery();
+            if (!rs.next())
+                return NOT_EXISTS;
+            String groupName = GROUP_IDS.name(c, (Integer) rs.getObject(1));
+            if (groupName != null)
+                GROUP_FEEDS.removed(groupName, postId);
+            EXISTING.deleted(1);
+            TRENDING.removed(postId);
+            return OK;
         } catch (SQLException e) {
             e.printStackTrace();
             return ERROR;
         }
     }
 
-    private static Post makePost(ResultSet rs) throws SQLException {
+    static final IndexedRowMapper<Post> POST_MAPPER = new IndexedRowMapper<>(i -> rs -> {
         Post p = new Post();
-        p.setId(rs.getInt("id"));
-        p.setAuthor(rs.getInt("author"));
-        p.setText(rs.getString("text"));
-        p.setTimeStamp(rs.getTimestamp("date"));
-        p.setLikes(rs.getInt("likesCount"));
+        p.setId(rs.getInt(i[0]));
+        p.setAuthor(rs.getInt(i[1]));
+        p.setText(rs.getString(i[2]));
+        p.setTimeStamp(rs.getTimestamp(i[3]));
+        p.setLikes(rs.getInt(i[4]));
         return p;
-    }
+    }, "id", "author", "text", "date", "likesCount");
 
     /**
      * returns the post by given id
@@ -357,16 +793,17 @@ public class Solution {
      * output: Post if the post exists. BadPost otherwise
      */
     public static Post getPost(Integer postId) {
-        try (Connection c = DBConnector.getConnection();
-             PreparedStatement getPost = c.prepareStatement("SELECT posts.*,COUNT(likes.postId) as likesCount\n" +
-                     "FROM (posts\n" +
-                     "LEFT JOIN likes ON posts.id = likes.postId)\n" +
-                     String.format("WHERE posts.id = %d\n", postId) +
-                     "GROUP BY posts.id;")) {
+        ExistenceFilters known = existenceFilters();
+        if (known != null && Boolean.FALSE.equals(known.mightHavePost(postId)))
+            return Post.badPost();
+        try (Connection c = DBConnector.getReadConnection();
+             PreparedStatement getPost = c.prepareStatement("SELECT " + POST_COLUMNS + "," + LIKES_OF_POST + "\n" +
+                     "FROM posts\n" +
+                     String.format("WHERE posts.id = %d;", postId))) {
             ResultSet rs = getPost.executeQuery();
             if (!rs.next())
                 return Post.badPost();
-            return makePost(rs);
+            return POST_MAPPER.forResultSet(rs).map(rs);
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -386,10 +823,17 @@ public class Solution {
         try (Connection c = DBConnector.getConnection();
              PreparedStatement updatePost = c.prepareStatement("UPDATE posts\n" +
                      "SET text=?\n" +
-                     "WHERE id=?")) {
+                     "WHERE id=?\n" +
+                     "RETURNING groupId")) {
             updatePost.setString(1, post.getText());
             updatePost.setInt(2, post.getId());
-            return updatePost.executeUpdate() > 0 ? OK : NOT_EXISTS;
+            ResultSet rs = updatePost.executeQuery();
+            if (!rs.next())
+                return NOT_EXISTS;
+            String groupName = GROUP_IDS.name(c, (Integer) rs.getObject(1));
+            if (groupName != null)
+                GROUP_FEEDS.textChanged(groupName, post.getId(), post.getText());
+            return OK;
         } catch (SQLException e) {
             if (getSQLState(e) == NOT_NULL_VIOLATION.getValue())
                 return BAD_PARAMS;
@@ -398,12 +842,141 @@ public class Solution {
         }
     }
 
-    private static int max(int i1, int i2) {
-        return i1 > i2 ? i1 : i2;
+    private static boolean maintainMutualFriends() {
+        return Boolean.parseBoolean(DBConnector.getProperty("mutualFriends.maintain", "false"));
+    }
+
+    /*every pair whose mutual friends count changes when the edge (a,b) is added or removed:
+     *(n,b) for every other friend n of a, and (n,a) for every other friend n of b*/
+    private static final String MUTUAL_PAIRS_OF_EDGE = "WITH pairs AS (\n" +
+            "\tSELECT GREATEST(f.id2, e.b) AS id1, LEAST(f.id2, e.b) AS id2\n" +
+            "\tFROM friends f, (VALUES (?,?), (?,?)) AS e(a, b)\n" +
+            "\tWHERE f.id1 = e.a AND f.id2 <> e.b\n" +
+            ")\n";
+
+    /*every pair of friends of the given student*/
+    private static final String MUTUAL_PAIRS_OF_STUDENT = "WITH pairs AS (\n" +
+            "\tSELECT x.id2 AS id1, y.id2 AS id2\n" +
+            "\tFROM friends x, friends y\n" +
+            "\tWHERE x.id1 = ? AND y.id1 = x.id1 AND x.id2 > y.id2\n" +
+            ")\n";
+
+    private static void setEdge(PreparedStatement s, int a, int b) throws SQLException {
+        s.setInt(1, a);
+        s.setInt(2, b);
+        s.setInt(3, b);
+        s.setInt(4, a);
+    }
+
+    /**
+     * Applies the change of the friendship edge (a,b) to MutualFriends.
+     * Must run in the same transaction as the change to Friends: when adding, after the insert,
+     * when removing, after the delete.
+     */
+    private static void updateMutualFriends(int a, int b, int delta, Connection c) throws SQLException {
+        if (delta > 0) {
+            try (PreparedStatement add = c.prepareStatement(MUTUAL_PAIRS_OF_EDGE +
+                    "INSERT INTO MutualFriends\n" +
+                    "SELECT id1, id2, 1 FROM pairs\n" +
+                    "ON CONFLICT (id1,id2) DO UPDATE SET count = MutualFriends.count + 1")) {
+                setEdge(add, a, b);
+                add.execute();
+            }
+            return;
+        }
+        try (PreparedStatement decrement = c.prepareStatement(MUTUAL_PAIRS_OF_EDGE +
+                "UPDATE MutualFriends m SET count = m.count - 1\n" +
+                "FROM pairs p\n" +
+                "WHERE m.id1 = p.id1 AND m.id2 = p.id2");
+             PreparedStatement cleanup = c.prepareStatement(MUTUAL_PAIRS_OF_EDGE +
+                     "DELETE FROM MutualFriends m\n" +
+                     "USING pairs p\n" +
+                     "WHERE m.id1 = p.id1 AND m.id2 = p.id2 AND m.count <= 0")) {
+            setEdge(decrement, a, b);
+            decrement.execute();
+            setEdge(cleanup, a, b);
+            cleanup.execute();
+        }
+    }
+
+    /**
+     * Removes a student from MutualFriends: the student is no longer a mutual friend of any pair of its friends,
+     * and has no mutual friends with anyone. Must run before the student's friendships are deleted.
+     */
+    private static void removeFromMutualFriends(int studentId, Connection c) throws SQLException {
+        try (PreparedStatement decrement = c.prepareStatement(MUTUAL_PAIRS_OF_STUDENT +
+                "UPDATE MutualFriends m SET count = m.count - 1\n" +
+                "FROM pairs p\n" +
+                "WHERE m.id1 = p.id1 AND m.id2 = p.id2");
+             PreparedStatement cleanup = c.prepareStatement(MUTUAL_PAIRS_OF_STUDENT +
+                     "DELETE FROM MutualFriends m\n" +
+                     "USING pairs p\n" +
+                     "WHERE m.id1 = p.id1 AND m.id2 = p.id2 AND m.count <= 0");
+             PreparedStatement remove = c.prepareStatement("DELETE FROM MutualFriends\n" +
+                     "WHERE id1 = ? OR id2 = ?")) {
+            decrement.setInt(1, studentId);
+            decrement.execute();
+            cleanup.setInt(1, studentId);
+            cleanup.execute();
+            remove.setInt(1, studentId);
+            remove.setInt(2, studentId);
+            remove.execute();
+        }
     }
 
-    private static int min(int i1, int i2) {
-        return i1 < i2 ? i1 : i2;
+    /**
+     * Returns the number of mutual friends of two students.
+     * When mutualFriends.maintain is set this is a single primary key lookup in MutualFriends,
+     * otherwise it is computed from Friends.
+     * input: student id 1, student id 2
+     * output: the number of students that are friends of both. In case of an error, return -1
+     */
+    public static int getMutualFriendsCount(Integer studentId1, Integer studentId2) {
+        String query = maintainMutualFriends() ?
+                "SELECT count FROM MutualFriends\n" +
+                        "WHERE id1 = GREATEST(?::integer, ?::integer) AND id2 = LEAST(?::integer, ?::integer)" :
+                "SELECT COUNT(*)\n" +
+                        "FROM friends x, friends y\n" +
+                        "WHERE x.id1 = ? AND y.id1 = ? AND x.id2 = y.id2 AND ? <> ?";
+        try (Connection c = DBConnector.getReadConnection();
+             PreparedStatement s = c.prepareStatement(query)) {
+            setEdge(s, studentId1, studentId2);
+            ResultSet rs = s.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * Recomputes MutualFriends from Friends, e.g. after turning on mutualFriends.maintain on an existing database
+     * output: ReturnValue with the following conditions:
+     * OK in case of success
+     * ERROR in case of database error
+     */
+    public static ReturnValue rebuildMutualFriends() {
+        try (Connection c = DBConnector.getConnection();
+             PreparedStatement clear = truncate("MutualFriends", c);
+             PreparedStatement fill = c.prepareStatement("INSERT INTO MutualFriends\n" +
+                     "SELECT x.id2, y.id2, COUNT(*)\n" +
+                     "FROM friends x, friends y\n" +
+                     "WHERE x.id1 = y.id1 AND x.id2 > y.id2\n" +
+                     "GROUP BY x.id2, y.id2")) {
+            c.setAutoCommit(false);
+            try {
+                clear.execute();
+                fill.execute();
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+            return OK;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return ERROR;
+        }
     }
 
     /**
@@ -418,18 +991,44 @@ public class Solution {
      */
 
     public static ReturnValue makeAsFriends(Integer studentId1, Integer studentId2) {
+        if (studentId1 == null || studentId2 == null || studentId1.equals(studentId2))
+            return BAD_PARAMS;
+        ExistenceFilters known = existenceFilters();
+        if (known != null && (Boolean.FALSE.equals(known.mightHaveStudent(studentId1))
+                || Boolean.FALSE.equals(known.mightHaveStudent(studentId2))))
+            return NOT_EXISTS;
         try (Connection c = DBConnector.getConnection();
-             PreparedStatement s = c.prepareStatement("INSERT INTO Friends\n" +
-                     String.format("VALUES (%d,%d)", max(studentId1, studentId2), min(studentId1, studentId2)))) {
-            s.execute();
+             PreparedStatement s = c.prepareStatement("WITH pair AS (\n" +
+                     "\tSELECT a.id AS id1, b.id AS id2 FROM students a, students b\n" +
+                     "\tWHERE (a.id, b.id) IN ((?,?),(?,?))\n" +
+                     "), inserted AS (\n" +
+                     "\tINSERT INTO Friends SELECT id1, id2 FROM pair\n" +
+                     "\tON CONFLICT DO NOTHING\n" +
+                     "\tRETURNING id1\n" +
+                     ")\n" +
+                     "SELECT (SELECT COUNT(*) FROM pair), (SELECT COUNT(*) FROM inserted)")) {
+            setEdge(s, studentId1, studentId2);
+            c.setAutoCommit(false);
+            try (ExistenceFilters.Write write = EXISTING.write()) {
+                write.addFriendship(studentId1, studentId2);
+                ResultSet rs = s.executeQuery();
+                rs.next();
+                //both students exist iff both directions of the pair were found
+                if (rs.getInt(1) < 2 || rs.getInt(2) == 0) {
+                    c.rollback();
+                    return rs.getInt(1) < 2 ? NOT_EXISTS : ALREADY_EXISTS;
+                }
+                if (maintainMutualFriends())
+                    updateMutualFriends(studentId1, studentId2, 1, c);
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
         } catch (SQLException e) {
             int sqlState = getSQLState(e);
             if (sqlState == FOREIGN_KEY_VIOLATION.getValue())
                 return NOT_EXISTS;
-            if (sqlState == UNIQUE_VIOLATION.getValue())
-                return ALREADY_EXISTS;
-            if (sqlState == CHECK_VIOLATION.getValue())
-                return BAD_PARAMS;
             e.printStackTrace();
             return ERROR;
         }
@@ -446,10 +1045,26 @@ public class Solution {
      * ERROR in case of database error
      */
     public static ReturnValue makeAsNotFriends(Integer studentId1, Integer studentId2) {
+        ExistenceFilters known = existenceFilters();
+        if (known != null && Boolean.FALSE.equals(known.mightHaveFriendship(studentId1, studentId2)))
+            return NOT_EXISTS;
         try (Connection c = DBConnector.getConnection();
              PreparedStatement s = c.prepareStatement("DELETE FROM Friends\n" +
-                     String.format("WHERE id1 = %d AND id2 = %d", max(studentId1, studentId2), min(studentId1, studentId2)))) {
-            return s.executeUpdate() > 0 ? OK : NOT_EXISTS;
+                     String.format("WHERE (id1 = %d AND id2 = %d) OR (id1 = %d AND id2 = %d)",
+                             studentId1, studentId2, studentId2, studentId1))) {
+            c.setAutoCommit(false);
+            try {
+                boolean deleted = s.executeUpdate() > 0;
+                if (deleted && maintainMutualFriends())
+                    updateMutualFriends(studentId1, studentId2, -1, c);
+                c.commit();
+                if (deleted)
+                    EXISTING.deleted(1);
+                return deleted ? OK : NOT_EXISTS;
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
         } catch (SQLException e) {
             int sqlState = getSQLState(e);
             if (sqlState == FOREIGN_KEY_VIOLATION.getValue())
@@ -459,6 +1074,54 @@ public class Solution {
         }
     }
 
+    private static int likeCounterSlots() {
+        return Integer.parseInt(DBConnector.getProperty("likes.counterSlots", "16"));
+    }
+
+    private static final LikeCounters LIKE_COUNTERS = new LikeCounters();
+
+    //adds a like (1) or an unlike (-1) of the posts of the postId column of a query to the slot of the student
+    private static final String COUNT_LIKES = "INSERT INTO PostLikes(postId,slot,likes)\n" +
+            "SELECT postId, %d, %d FROM %s\n" +
+            "ON CONFLICT (postId,slot) DO UPDATE SET likes = PostLikes.likes + EXCLUDED.likes\n";
+
+    /*the likes of the post after the change of the slot in counted: the statement does not see its own change,
+     *so it sums the other slots and adds the new value of that one*/
+    private static final String LIKED_POST = "SELECT posts.groupId, posts.date,\n" +
+            "(SELECT COALESCE(SUM(likes), 0) FROM PostLikes\n" +
+            "WHERE PostLikes.postId = posts.id AND PostLikes.slot <> %d) + COALESCE((SELECT likes FROM counted), 0)";
+
+    private static int likeBucketSeconds() {
+        return Integer.parseInt(DBConnector.getProperty("likes.bucketSeconds", "300"));
+    }
+
+    private static long likeBucketsRetainedSeconds() {
+        return Long.parseLong(DBConnector.getProperty("likes.bucketsRetainedHours", "24")) * 3600;
+    }
+
+    /*after every likes.compactEvery likes and unlikes, the slots of the posts with the most of them are folded,
+     *and the like buckets too old for any trending window are removed, in the background after the like returns*/
+    private static void compactLikeCounters() {
+        if (!LIKE_COUNTERS.changed(Long.parseLong(DBConnector.getProperty("likes.compactEvery", "10000"))))
+            return;
+        int posts = Integer.parseInt(DBConnector.getProperty("likes.compactPosts", "1000"));
+        long retainedSeconds = likeBucketsRetainedSeconds();
+        LIKE_COUNTERS.compactLater(() -> {
+            try (Connection c = DBConnector.getConnection()) {
+                LIKE_COUNTERS.compact(c, posts);
+                LikeRollups.prune(c, retainedSeconds);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private static void likesChanged(ResultSet rs, int postId, Connection c) throws SQLException {
+        String groupName = GROUP_IDS.name(c, (Integer) rs.getObject(1));
+        if (groupName != null)
+            GROUP_FEEDS.likesChanged(groupName, postId, rs.getTimestamp(2).toLocalDateTime(), rs.getInt(3));
+    }
+
     /**
      * Marks a post as liked by a student
      * input: student id, liked post id
@@ -469,27 +1132,53 @@ public class Solution {
      * ERROR in case of database error
      */
     public static ReturnValue likePost(Integer studentId, Integer postId) {
+        ExistenceFilters known = existenceFilters();
+        if (known != null && (Boolean.FALSE.equals(known.mightHaveStudent(studentId))
+                || Boolean.FALSE.equals(known.mightHavePost(postId))))
+            return NOT_EXISTS;
+        int slot = LikeCounters.slot(studentId, likeCounterSlots());
         try (Connection c = DBConnector.getConnection();
-             PreparedStatement s = c.prepareStatement("INSERT INTO likes(studentId,postId)\n" +
-                     String.format("SELECT %d,id\n", studentId) +
-                     "FROM posts\n" +
-                     "WHERE (\n" +
-                     "(groupName IS NULL)\n" +
+             PreparedStatement s = c.prepareStatement("WITH target AS (\n" +
+                     "SELECT posts.id, posts.groupId, posts.date\n" +
+                     "FROM posts, students\n" +
+                     "WHERE posts.id = ? AND students.id = ? AND (\n" +
+                     "(groupId IS NULL)\n" +
                      "OR EXISTS\n" +
                      "(\n" +
                      "SELECT * FROM groups\n" +
-                     String.format("WHERE groups.studentId = %d AND groups.name = posts.groupName)\n", studentId) +
-                     String.format(") AND id = %d", postId))) {
-            return s.executeUpdate() > 0 ? OK : NOT_EXISTS;
+                     "WHERE groups.studentId = students.id AND groups.groupId = posts.groupId)\n" +
+                     ")), liked AS (\n" +
+                     "INSERT INTO likes(studentId,postId,postDate,likedAt)\n" +
+                     "SELECT ?,id,date,LOCALTIMESTAMP FROM target\n" +
+                     "ON CONFLICT DO NOTHING\n" +
+                     "RETURNING postId, likedAt), counted AS (\n" +
+                     String.format(COUNT_LIKES, slot, 1, "liked") +
+                     "RETURNING likes), rolled AS (\n" +
+                     LikeRollups.add("liked, target", 1, likeBucketSeconds()) + ")\n" +
+                     String.format(LIKED_POST, slot) + ",\n" +
+                     "(SELECT COUNT(*) FROM liked)\n" +
+                     "FROM target posts")) {
+            s.setInt(1, postId);
+            s.setInt(2, studentId);
+            s.setInt(3, studentId);
+            ResultSet rs = s.executeQuery();
+            //no row: the student or the post does not exist, or the post is in a group of which the student is not a member
+            if (!rs.next())
+                return NOT_EXISTS;
+            if (rs.getInt(4) == 0)
+                return ALREADY_EXISTS;
+            likesChanged(rs, postId, c);
+            if (rs.getObject(1) == null)
+                TRENDING.liked(postId);
         } catch (SQLException e) {
             int sqlState = getSQLState(e);
             if (sqlState == FOREIGN_KEY_VIOLATION.getValue())
                 return NOT_EXISTS;
-            if (sqlState == UNIQUE_VIOLATION.getValue())
-                return ALREADY_EXISTS;
             e.printStackTrace();
             return ERROR;
         }
+        compactLikeCounters();
+        return OK;
     }
 
     /**
@@ -501,16 +1190,35 @@ public class Solution {
      * ERROR in case of database error
      */
     public static ReturnValue unlikePost(Integer studentId, Integer postId) {
+        ExistenceFilters known = existenceFilters();
+        if (known != null && (Boolean.FALSE.equals(known.mightHaveStudent(studentId))
+                || Boolean.FALSE.equals(known.mightHavePost(postId))))
+            return NOT_EXISTS;
+        int slot = LikeCounters.slot(studentId, likeCounterSlots());
         try (Connection c = DBConnector.getConnection();
-             PreparedStatement s = c.prepareStatement("DELETE FROM likes\n" +
-                     String.format("WHERE studentId = %d AND postId = %d", studentId, postId))) {
-            return s.executeUpdate() > 0 ? OK : NOT_EXISTS;
+             PreparedStatement s = c.prepareStatement("WITH unliked AS (\n" +
+                     "DELETE FROM likes\n" +
+                     String.format("WHERE studentId = %d AND postId = %d\n", studentId, postId) +
+                     "RETURNING postId, likedAt), counted AS (\n" +
+                     String.format(COUNT_LIKES, slot, -1, "unliked") +
+                     "RETURNING likes), rolled AS (\n" +
+                     LikeRollups.add("unliked JOIN posts ON posts.id = unliked.postId", -1, likeBucketSeconds()) + ")\n" +
+                     String.format(LIKED_POST, slot) + "\n" +
+                     "FROM unliked JOIN posts ON posts.id = unliked.postId")) {
+            ResultSet rs = s.executeQuery();
+            if (!rs.next())
+                return NOT_EXISTS;
+            likesChanged(rs, postId, c);
+            if (rs.getObject(1) == null)
+                TRENDING.unliked(postId);
         } catch (SQLException e) {
             if (getSQLState(e) == FOREIGN_KEY_VIOLATION.getValue())
                 return NOT_EXISTS;
             e.printStackTrace();
             return ERROR;
         }
+        compactLikeCounters();
+        return OK;
     }
 
     /**
@@ -523,19 +1231,36 @@ public class Solution {
      * ERROR in case of database error
      */
     public static ReturnValue joinGroup(Integer studentId, String groupName) {
+        Integer known = GROUP_IDS.known(groupName);
+        if (known != null && GROUP_MEMBERS.isMember(known, studentId) == Boolean.TRUE)
+            return ALREADY_EXISTS;
+        //the group is created by the statement that adds its first member
         try (Connection c = DBConnector.getConnection();
-             PreparedStatement s = c.prepareStatement("INSERT INTO groups\n" +
-                     "VALUES(?,?)")) {
-            s.setString(1, groupName);
-            s.setInt(2, studentId);
-            s.execute();
+             PreparedStatement s = c.prepareStatement("WITH student AS (\n" +
+                     "\tSELECT id FROM students WHERE id = ?\n" +
+                     "), joined_group AS (\n" +
+                     GroupDictionary.idQuery(known != null, "student") + "\n" +
+                     "), joined AS (\n" +
+                     "\tINSERT INTO groups SELECT joined_group.id, student.id FROM student, joined_group\n" +
+                     "\tON CONFLICT DO NOTHING\n" +
+                     "\tRETURNING studentId\n" +
+                     ")\n" +
+                     "SELECT (SELECT COUNT(*) FROM student), (SELECT COUNT(*) FROM joined), (SELECT id FROM joined_group)")) {
+            s.setInt(1, studentId);
+            s.setObject(2, known != null ? known : groupName);
+            ResultSet rs = s.executeQuery();
+            rs.next();
+            if (rs.getInt(1) == 0)
+                return NOT_EXISTS;
+            GROUP_IDS.learn(c, groupName, rs.getInt(3));
+            if (rs.getInt(2) == 0)
+                return ALREADY_EXISTS;
+            GROUP_MEMBERS.added(rs.getInt(3), studentId);
             return OK;
         } catch (SQLException e) {
             int sqlState = getSQLState(e);
             if (sqlState == FOREIGN_KEY_VIOLATION.getValue())
                 return NOT_EXISTS;
-            if (sqlState == UNIQUE_VIOLATION.getValue())
-                return ALREADY_EXISTS;
             e.printStackTrace();
             return ERROR;
         }
@@ -552,52 +1277,76 @@ public class Solution {
     public static ReturnValue leaveGroup(Integer studentId, String groupName) {
         try (Connection c = DBConnector.getConnection();
              PreparedStatement s = c.prepareStatement("DELETE FROM groups\n" +
-                     "WHERE name=? AND studentID=?")) {
-            s.setString(1, groupName);
+                     "WHERE groupId=? AND studentID=?")) {
+            Integer groupId = GROUP_IDS.find(c, groupName);
+            if (groupId == null || GROUP_MEMBERS.isMember(groupId, studentId) == Boolean.FALSE)
+                return NOT_EXISTS;
+            s.setInt(1, groupId);
             s.setInt(2, studentId);
-            return s.executeUpdate() > 0 ? OK : NOT_EXISTS;
+            if (s.executeUpdate() == 0)
+                return NOT_EXISTS;
+            GROUP_MEMBERS.removed(groupId, studentId);
+            return OK;
         } catch (SQLException e) {
             e.printStackTrace();
             return ERROR;
         }
     }
 
+    /**
+     * output: an empty Feed for the posts of a feed operation, a ColumnarFeed when feed.columnar is set
+     */
+    private static Feed newFeed() {
+        return Boolean.parseBoolean(DBConnector.getProperty("feed.columnar", "false")) ? new ColumnarFeed() : new Feed();
+    }
+
     private static Feed makeFeed(ResultSet rs) throws SQLException {
-        Feed f = new Feed();
+        Feed f = newFeed();
+        if (f instanceof ColumnarFeed) {
+            ColumnarFeed columns = (ColumnarFeed) f;
+            int[] i = POST_MAPPER.indexes(rs);
+            while (rs.next()) {
+                columns.append(rs.getInt(i[0]), rs.getInt(i[1]), rs.getString(i[2]), rs.getTimestamp(i[3]),
+                        rs.getInt(i[4]));
+            }
+            return f;
+        }
+        RowMapper<Post> mapper = POST_MAPPER.forResultSet(rs);
         while (rs.next()) {
-            f.add(makePost(rs));
+            f.add(mapper.map(rs));
         }
         return f;
     }
 
+    //the columns of posts that make a Post, without the search column
+    private static final String POST_COLUMNS = "posts.id, posts.author, posts.text, posts.date, posts.groupId";
+
+    private static final String LIKES_OF_POST = "(SELECT COALESCE(SUM(likes), 0) FROM PostLikes\n" +
+            "WHERE PostLikes.postId = posts.id) AS likesCount";
+
+    private static final String STUDENT_FEED = "SELECT " + POST_COLUMNS + "," + LIKES_OF_POST + "\n" +
+            "FROM friends\n" +
+            "\tINNER JOIN \n" +
+            "\tposts\n" +
+            "\tON posts.author = friends.id2\n" +
+            "WHERE friends.id1 = ?\n" +
+            "AND (posts.groupId IS NULL)\n" +
+            "ORDER BY posts.date DESC,likesCount DESC,posts.id";
+
+    private static final String GROUP_FEED = "SELECT " + POST_COLUMNS + "," + LIKES_OF_POST + "\n" +
+            "FROM posts\n" +
+            "WHERE posts.groupId = (SELECT id FROM GroupNames WHERE name = ?)\n" +
+            "ORDER BY posts.date DESC,likesCount DESC,posts.id";
+
     /**
      * Gets a list of personal posts posted by a student and his\her friends. Feed should be ordered by date and likes, both in descending order.
      * input: student id
      * output: Feed the containing the relevant posts. In case of an error, return an empty feed
      */
     public static Feed getStudentFeed(Integer id) {
-        try (Connection c = DBConnector.getConnection();
-             PreparedStatement s = c.prepareStatement("WITH friendship AS (\n" +
-                     "\tSELECT id1,id2\n" +
-                     "\tFROM friends\n" +
-                     "\tUNION\n" +
-                     "\tSELECT id2,id1\n" +
-                     "\tFROM friends\n" +
-                     ")\n" +
-                     "SELECT posts.*,COUNT(likes.*) AS likesCount\n" +
-                     "FROM (posts\n" +
-                     "\tLEFT JOIN \n" +
-                     "\tlikes\n" +
-                     "\tON posts.id = likes.postID\n" +
-                     ")\n" +
-                     "WHERE (posts.groupName IS NULL)\n" +
-                     "AND EXISTS (\n" +
-                     "\tSELECT *\n" +
-                     "\tFROM friendship\n" +
-                     String.format("\tWHERE id1 = posts.author AND id2 = %d\n", id) +
-                     ")\n" +
-                     "GROUP BY posts.id\n" +
-                     "ORDER BY posts.date DESC,likesCount DESC")) {
+        try (Connection c = DBConnector.getReadConnection();
+             PreparedStatement s = c.prepareStatement(STUDENT_FEED)) {
+            s.setInt(1, id);
             return makeFeed(s.executeQuery());
         } catch (SQLException e) {
             e.printStackTrace();
@@ -612,14 +1361,334 @@ public class Solution {
      */
 
     public static Feed getGroupFeed(String groupName) {
-        try (Connection c = DBConnector.getConnection();
-             PreparedStatement s = c.prepareStatement("SELECT posts.*,COUNT(likes.postId) as likesCount\n" +
-                     "FROM (posts\n" +
-                     "LEFT JOIN likes ON posts.id = likes.postId)\n" +
-                     "WHERE posts.groupname = ?\n" +
-                     "GROUP BY posts.id\n" +
-                     "ORDER BY posts.date DESC,likesCount DESC;")) {
+        List<Post> cached = GROUP_FEEDS.get(groupName, -1);
+        if (cached != null) {
+            Feed f = newFeed();
+            f.addAll(cached);
+            return f;
+        }
+        long stamp = GROUP_FEEDS.stamp();
+        try (Connection c = DBConnector.getPrimaryReadConnection();
+             PreparedStatement s = c.prepareStatement(GROUP_FEED)) {
             s.setString(1, groupName);
+            Feed f = makeFeed(s.executeQuery());
+            GROUP_FEEDS.put(groupName, f, true, stamp);
+            return f;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new Feed();
+        }
+    }
+
+    /*
+     * The next posts of each author's public timeline, in feed order, read newest first from posts(author, date DESC).
+     * A chunk holds the posts older than the date it is given: the given number of them and every other post of the
+     * date of the last one, so it ends between two dates. The next chunk starts at that date, and likes that change
+     * in between, which reorder posts of one date only, cannot make it skip or repeat a post.
+     */
+    private static final String AUTHOR_TIMELINES = "SELECT p.*\n" +
+            "FROM unnest(?::integer[]) AS authors(id), (SELECT ?::timestamp AS before) AS chunk\n" +
+            "CROSS JOIN LATERAL (\n" +
+            "\tSELECT " + POST_COLUMNS + "," + LIKES_OF_POST + "\n" +
+            "\tFROM posts\n" +
+            "\tWHERE posts.author = authors.id AND posts.groupId IS NULL\n" +
+            "\tAND (chunk.before IS NULL OR posts.date < chunk.before)\n" +
+            "\tAND posts.date >= COALESCE((SELECT older.date FROM posts AS older\n" +
+            "\t\tWHERE older.author = authors.id AND older.groupId IS NULL\n" +
+            "\t\tAND (chunk.before IS NULL OR older.date < chunk.before)\n" +
+            "\t\tORDER BY older.date DESC OFFSET ? LIMIT 1), '-infinity')\n" +
+            "\tORDER BY posts.date DESC,likesCount DESC,posts.id) p";
+
+    private static final Comparator<Post> FEED_ORDER = Comparator.comparing(Post::getDate).reversed()
+            .thenComparing(Comparator.comparing(Post::getLikes).reversed())
+            .thenComparing(Post::getId);
+
+    //group names to the ids that Groups and posts store
+    private static final GroupDictionary GROUP_IDS = new GroupDictionary();
+
+    private static final GroupMembers GROUP_MEMBERS = new GroupMembers();
+
+    private static final ExistenceFilters EXISTING = new ExistenceFilters();
+
+    private static boolean useBloomFilters() {
+        return Boolean.parseBoolean(DBConnector.getProperty("existence.bloomFilters", "false"));
+    }
+
+    private static double falsePositiveRate() {
+        return Double.parseDouble(DBConnector.getProperty("existence.falsePositiveRate", "0.01"));
+    }
+
+    /*the existence filters, built from the tables on first use and again when they got stale,
+     *or null if they are disabled or cannot be built*/
+    private static ExistenceFilters existenceFilters() {
+        if (!useBloomFilters())
+            return null;
+        if (EXISTING.isBuilt() && !EXISTING.needsRebuild())
+            return EXISTING;
+        synchronized (EXISTING) {
+            if (!EXISTING.isBuilt() || EXISTING.needsRebuild()) {
+                try (Connection c = DBConnector.getPrimaryReadConnection()) {
+                    EXISTING.build(c, falsePositiveRate());
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                    return null;
+                }
+            }
+        }
+        return EXISTING;
+    }
+
+    private static boolean useMemberBitmaps() {
+        return Boolean.parseBoolean(DBConnector.getProperty("groups.memberBitmaps", "false"));
+    }
+
+    /*answered by the member bitmaps, which are loaded on first use, unless they are disabled*/
+    private static boolean isMember(int groupId, int studentId, Connection c) throws SQLException {
+        if (useMemberBitmaps()) {
+            if (!GROUP_MEMBERS.isLoaded())
+                GROUP_MEMBERS.load(c);
+            //null when a reset unloaded them meanwhile, then the query answers
+            Boolean member = GROUP_MEMBERS.isMember(groupId, studentId);
+            if (member != null)
+                return member;
+        }
+        try (PreparedStatement s = c.prepareStatement("SELECT COUNT(*)\n" +
+                "FROM groups\n" +
+                "WHERE groupId = ? and studentId = ?")) {
+            s.setInt(1, groupId);
+            s.setInt(2, studentId);
+            ResultSet rs = s.executeQuery();
+            return rs.next() && rs.getInt(1) > 0;
+        }
+    }
+
+    /*the newest posts of the most recently read groups, kept up to date by the writes of this class.
+     *the group feeds that fill it read from the primary, a lagging replica would leave it behind the writes*/
+    private static final GroupFeedCache GROUP_FEEDS = new GroupFeedCache(FEED_ORDER,
+            Integer.parseInt(DBConnector.getProperty("groupFeed.cachedPosts", "50")),
+            Long.parseLong(DBConnector.getProperty("groupFeed.cacheBytes", "16777216")));
+
+    private static final String GROUP_FEED_TOP = "SELECT " + POST_COLUMNS + "," + LIKES_OF_POST + "\n" +
+            "FROM posts\n" +
+            "WHERE posts.groupId = (SELECT id FROM GroupNames WHERE name = ?)\n" +
+            "ORDER BY posts.date DESC,likesCount DESC,posts.id\n" +
+            "LIMIT ?";
+
+    private static int feedChunkSize() {
+        return Integer.parseInt(DBConnector.getProperty("feed.chunkSize", "8"));
+    }
+
+    private static HashMap<Integer, List<Post>> loadTimelines(Connection c, int[] authors, Post after, int count)
+            throws SQLException {
+        HashMap<Integer, List<Post>> timelines = new HashMap<>();
+        try (PreparedStatement s = c.prepareStatement(AUTHOR_TIMELINES)) {
+            Integer[] ids = new Integer[authors.length];
+            for (int i = 0; i < authors.length; i++)
+                ids[i] = authors[i];
+            s.setArray(1, c.createArrayOf("integer", ids));
+            s.setTimestamp(2, after == null ? null : after.getTimeStamp());
+            s.setInt(3, count - 1);
+            ResultSet rs = s.executeQuery();
+            RowMapper<Post> mapper = POST_MAPPER.forResultSet(rs);
+            while (rs.next()) {
+                Post post = mapper.map(rs);
+                timelines.computeIfAbsent(post.getAuthor(), author -> new ArrayList<>()).add(post);
+            }
+        }
+        return timelines;
+    }
+
+    /**
+     * Gets the first posts of the feed of getStudentFeed(id), without reading the rest of the friends' history.
+     * Each friend's timeline is read in chunks that start at feed.chunkSize posts, and the timelines are merged
+     * by a priority queue, so the posts read grow with the limit and the number of friends only.
+     * input: student id, maximal number of posts
+     * output: Feed with at most limit posts, in the order of getStudentFeed. In case of an error, return an empty feed
+     */
+    public static Feed getStudentFeed(Integer id, int limit) {
+        if (limit <= 0)
+            return new Feed();
+        try (Connection c = DBConnector.getReadConnection();
+             PreparedStatement s = c.prepareStatement("SELECT id2 FROM friends WHERE id1 = ?")) {
+            s.setInt(1, id);
+            ResultSet rs = s.executeQuery();
+            ArrayList<Integer> friends = new ArrayList<>();
+            while (rs.next())
+                friends.add(rs.getInt(1));
+            int[] authors = friends.stream().mapToInt(Integer::intValue).toArray();
+
+            TimelineMerger<Post> merger = new TimelineMerger<>(FEED_ORDER,
+                    (ids, after, count) -> loadTimelines(c, ids, after, count), feedChunkSize());
+            Feed f = newFeed();
+            f.addAll(merger.merge(authors, limit));
+            return f;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new Feed();
+        }
+    }
+
+    /**
+     * Gets the first posts of the feed of getGroupFeed(groupName), reading the group's posts newest first.
+     * Pages within the groupFeed.cachedPosts newest posts of a group are served from GROUP_FEEDS,
+     * later pages are read from the database.
+     * input: group, maximal number of posts
+     * output: Feed with at most limit posts, in the order of getGroupFeed. In case of an error, return an empty feed
+     */
+    public static Feed getGroupFeed(String groupName, int limit) {
+        if (limit <= 0)
+            return new Feed();
+        Feed f = newFeed();
+        List<Post> cached = GROUP_FEEDS.get(groupName, limit);
+        if (cached != null) {
+            f.addAll(cached);
+            return f;
+        }
+        long stamp = GROUP_FEEDS.stamp();
+        int n = Math.max(limit, GROUP_FEEDS.getPostsPerGroup());
+        try (Connection c = DBConnector.getPrimaryReadConnection();
+             PreparedStatement s = c.prepareStatement(GROUP_FEED_TOP)) {
+            s.setString(1, groupName);
+            s.setInt(2, n);
+            Feed newest = makeFeed(s.executeQuery());
+            GROUP_FEEDS.put(groupName, newest, newest.size() < n, stamp);
+            f.addAll(newest.subList(0, Math.min(limit, newest.size())));
+            return f;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new Feed();
+        }
+    }
+
+    private static int feedFetchSize() {
+        return Integer.parseInt(DBConnector.getProperty("feed.fetchSize", "500"));
+    }
+
+    private static Stream<Post> streamFeed(String query, Object parameter) {
+        Connection c = DBConnector.getReadConnection();
+        if (c == null)
+            return Stream.empty();
+        try {
+            PreparedStatement s = c.prepareStatement(query);
+            s.setObject(1, parameter);
+            return new Cursor<>(c, s, feedFetchSize(), POST_MAPPER).stream();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            try {
+                c.close();
+            } catch (SQLException ignored) {
+            }
+            return Stream.empty();
+        }
+    }
+
+    /**
+     * Streams the same posts as getStudentFeed, in the same order, without holding the whole feed in memory.
+     * Rows are read through a server side cursor, feed.fetchSize rows per round trip.
+     * The stream holds a connection until it is exhausted or closed, so callers that may stop early should
+     * close it, e.g. with try-with-resources.
+     * input: student id
+     * output: a Stream of the relevant posts. In case of an error opening the feed, return an empty stream
+     */
+    public static Stream<Post> streamStudentFeed(Integer id) {
+        return streamFeed(STUDENT_FEED, id);
+    }
+
+    /**
+     * Streams the same posts as getGroupFeed, in the same order, without holding the whole feed in memory.
+     * See streamStudentFeed.
+     * input: group
+     * output: a Stream of the relevant posts. In case of an error opening the feed, return an empty stream
+     */
+    public static Stream<Post> streamGroupFeed(String groupName) {
+        return streamFeed(GROUP_FEED, groupName);
+    }
+
+    /*the k posts of a group (or of no group) with the most likes in the buckets of the window, summed from LikeBuckets.
+     *posts are read only for the k of them*/
+    private static final String TRENDING_POSTS = "WITH trending AS (\n" +
+            "\tSELECT postId, SUM(likes) AS likesCount\n" +
+            "\tFROM LikeBuckets\n" +
+            "\tWHERE %s AND bucket >= %s\n" +
+            "\tGROUP BY postId\n" +
+            "\tHAVING SUM(likes) > 0\n" +
+            "\tORDER BY likesCount DESC, postId\n" +
+            "\tLIMIT ?\n" +
+            ")\n" +
+            "SELECT " + POST_COLUMNS + ", trending.likesCount\n" +
+            "FROM trending JOIN posts ON posts.id = trending.postId\n" +
+            "ORDER BY trending.likesCount DESC, posts.id";
+
+    /**
+     * Gets the most liked posts of a recent window, from the like buckets (likes.bucketSeconds wide) alone.
+     * The window is rounded down to the start of its first bucket, so it may reach up to one bucket further back,
+     * and may be at most likes.bucketsRetainedHours long.
+     * input: the window, ending now; the number of posts; the group of the posts, or null for the posts of no group
+     * output: Feed of at most k posts ordered by their likes in the window, descending, where the likes of each post
+     * are those made in the window. In case of an error, or an unknown group, return an empty feed
+     */
+    public static Feed getTrendingPosts(Duration window, int k, String groupName) {
+        try (Connection c = DBConnector.getReadConnection()) {
+            Integer groupId = groupName == null ? null : GROUP_IDS.find(c, groupName);
+            if (groupName != null && groupId == null)
+                return new Feed();
+            try (PreparedStatement s = c.prepareStatement(String.format(TRENDING_POSTS,
+                    groupId == null ? "groupId IS NULL" : "groupId = " + groupId,
+                    LikeRollups.bucket("LOCALTIMESTAMP - ? * INTERVAL '1 second'", likeBucketSeconds())))) {
+                s.setLong(1, window.getSeconds());
+                s.setInt(2, k);
+                return makeFeed(s.executeQuery());
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new Feed();
+        }
+    }
+
+    /**
+     * Same as getTrendingPosts(window, k, null): the most liked posts of no group.
+     */
+    public static Feed getTrendingPosts(Duration window, int k) {
+        return getTrendingPosts(window, k, null);
+    }
+
+    /*the likes of the posts of no group made by this process in the last trending.windowMinutes, in memory*/
+    private static final TrendingSketch TRENDING = new TrendingSketch(
+            Long.parseLong(DBConnector.getProperty("trending.windowMinutes", "60")) * 60000,
+            Integer.parseInt(DBConnector.getProperty("trending.panes", "12")),
+            Double.parseDouble(DBConnector.getProperty("trending.epsilon", "0.001")),
+            Double.parseDouble(DBConnector.getProperty("trending.delta", "0.01")),
+            Integer.parseInt(DBConnector.getProperty("trending.candidates", "1000")),
+            System::currentTimeMillis);
+
+    /**
+     * Gets the most liked posts of no group in the last trending.windowMinutes, estimated in memory from the likes
+     * and unlikes made through this process since it started (see TrendingSketch for the error bounds),
+     * without a query. Likes removed by deleteStudent stay counted until they leave the window.
+     * getTrendingPosts(window, k) counts the likes of any window exactly, from the like buckets in the database.
+     * input: the number of posts
+     * output: an ArrayList of at most k posts and their estimated likes in the window, by likes descending
+     */
+    public static ArrayList<TrendingPost> getTrendingPostsEstimate(int k) {
+        return TRENDING.top(k);
+    }
+
+    /*the posts matching a web search style query (words, "quoted phrases", or, -word) among those a feed shows,
+     *from the GIN index of textSearch: the source of the posts, then its condition, which takes one parameter*/
+    private static final String SEARCH_POSTS = "SELECT " + POST_COLUMNS + "," + LIKES_OF_POST + "\n" +
+            "FROM %s, websearch_to_tsquery('english', ?) query\n" +
+            "WHERE posts.textSearch @@ query AND %s\n" +
+            "ORDER BY ts_rank(posts.textSearch, query) DESC, posts.date DESC, posts.id\n" +
+            "LIMIT ?";
+
+    private static Feed searchPosts(String from, String where, String query, Object key, int limit) {
+        if (query == null || key == null)
+            return new Feed();
+        try (Connection c = DBConnector.getReadConnection();
+             PreparedStatement s = c.prepareStatement(String.format(SEARCH_POSTS, from, where))) {
+            s.setString(1, query);
+            s.setObject(2, key);
+            s.setInt(3, limit);
             return makeFeed(s.executeQuery());
         } catch (SQLException e) {
             e.printStackTrace();
@@ -627,6 +1696,30 @@ public class Solution {
         }
     }
 
+    /**
+     * Searches the text of the posts in the student feed of a student: the posts of no group by the student's friends.
+     * The query is words to find, in any form ("liked" finds "likes"), with "quoted phrases", or between alternatives,
+     * and -word to exclude.
+     * input: the id of the student searching, the query, the number of posts
+     * output: Feed of at most limit matching posts, most relevant first and then newest first.
+     * In case of an error, return an empty feed
+     */
+    public static Feed searchPosts(Integer studentId, String query, int limit) {
+        return searchPosts("friends\n\tINNER JOIN posts ON posts.author = friends.id2",
+                "friends.id1 = ? AND posts.groupId IS NULL", query, studentId, limit);
+    }
+
+    /**
+     * Searches the text of the posts in the group feed of a group, as searchPosts(studentId, query, limit) does.
+     * input: the query, the number of posts, the group name
+     * output: Feed of at most limit matching posts, most relevant first and then newest first.
+     * In case of an error, return an empty feed
+     */
+    public static Feed searchPosts(String query, int limit, String groupName) {
+        return searchPosts("posts", "posts.groupId = (SELECT id FROM GroupNames WHERE name = ?)",
+                query, groupName, limit);
+    }
+
     /**
      * Gets a list of students that the given student may know.
      * Denote the given the student by s. The returned list should consist of every student x in the database that holds the following:
@@ -638,19 +1731,13 @@ public class Solution {
      * output: an ArrayList containing the students. In case of an error, return an empty ArrayList
      */
     public static ArrayList<Student> getPeopleYouMayKnowList(Integer studentId) {
-        try (Connection c = DBConnector.getConnection();
-             PreparedStatement s = c.prepareStatement("WITH RECURSIVE friendship AS (\n" +
-                     "\tSELECT id1,id2\n" +
-                     "\tFROM friends\n" +
-                     "\tUNION\n" +
-                     "\tSELECT id2,id1\n" +
-                     "\tFROM friends\n" +
-                     "), find_paths(source, destination, length, path, cycle) AS (\n" +
+        try (Connection c = DBConnector.getReadConnection();
+             PreparedStatement s = c.prepareStatement("WITH RECURSIVE find_paths(source, destination, length, path, cycle) AS (\n" +
                      "    SELECT id1, id2, 1,ARRAY[id1],false\n" +
-                     "    FROM friendship f\n" +
+                     "    FROM friends f\n" +
                      "\tUNION ALL\n" +
                      "\tSELECT fp.source, f.id2, fp.length + 1,path || f.id1, f.id1 = ANY(path) OR f.id2 = ANY(path)\n" +
-                     "\tFROM friendship f, find_paths fp\n" +
+                     "\tFROM friends f, find_paths fp\n" +
                      "\tWHERE f.id1 = fp.destination AND NOT cycle AND length <= 2\n" +
                      "), haveSharedFriend AS (\n" +
                      "\tSELECT source, destination\n" +
@@ -674,11 +1761,12 @@ public class Solution {
                      "\tFROM groups A, groups B\n" +
                      "\tWHERE A.studentId = f.source \n" +
                      "\tAND B.studentId = f.destination\n" +
-                     "\tAND A.name = B.name)")) {
+                     "\tAND A.groupId = B.groupId)")) {
             ArrayList<Student> l = new ArrayList<>();
             ResultSet rs = s.executeQuery();
+            RowMapper<Student> mapper = STUDENT_MAPPER.forResultSet(rs);
             while (rs.next())
-                l.add(makeStudent(rs));
+                l.add(mapper.map(rs));
             return l;
         } catch (SQLException e) {
             e.printStackTrace();
@@ -687,6 +1775,107 @@ public class Solution {
 
     }
 
+    /*candidates are {id, mutualFriends, sharedGroups}, best first*/
+    private static final Comparator<int[]> CANDIDATE_RANK = (a, b) -> {
+        if (a[1] != b[1])
+            return Integer.compare(b[1], a[1]);
+        if (a[2] != b[2])
+            return Integer.compare(b[2], a[2]);
+        return Integer.compare(a[0], b[0]);
+    };
+
+    /**
+     * Gets the k best students from getPeopleYouMayKnowList, with their scores.
+     * Candidates are ranked by the number of mutual friends, then by the number of shared groups (both descending),
+     * and then by id. Only the 2-hop neighbourhood of the student is scanned (or its MutualFriends rows, when
+     * mutualFriends.maintain is set), and only the top k candidates are kept in a bounded heap, so student profiles
+     * are fetched for the returned candidates only.
+     * input: student id, k
+     * output: an ArrayList containing at most k ranked students, best first. In case of an error, return an empty ArrayList
+     */
+    public static ArrayList<RankedStudent> getRankedPeopleYouMayKnowList(Integer studentId, int k) {
+        if (k <= 0)
+            return new ArrayList<>();
+        boolean maintained = maintainMutualFriends();
+        String candidates = maintained ?
+                "WITH candidates AS (\n" +
+                        "\tSELECT CASE WHEN m.id1 = ? THEN m.id2 ELSE m.id1 END AS candidate, m.count AS mutualFriends\n" +
+                        "\tFROM MutualFriends m\n" +
+                        "\tWHERE (m.id1 = ? OR m.id2 = ?)\n" +
+                        "\tAND NOT EXISTS (\n" +
+                        "\t\tSELECT *\n" +
+                        "\t\tFROM friends f\n" +
+                        "\t\tWHERE f.id1 = m.id1 AND f.id2 = m.id2)\n" +
+                        ")\n" :
+                "WITH mine AS (\n" +
+                        "\tSELECT id2 AS friend\n" +
+                        "\tFROM friends\n" +
+                        "\tWHERE id1 = ?\n" +
+                        "), candidates AS (\n" +
+                        "\tSELECT f.id2 AS candidate, COUNT(*) AS mutualFriends\n" +
+                        "\tFROM mine m\n" +
+                        "\tINNER JOIN friends f ON f.id1 = m.friend\n" +
+                        "\tWHERE f.id2 <> ?\n" +
+                        "\tAND f.id2 NOT IN (SELECT friend FROM mine)\n" +
+                        "\tGROUP BY f.id2\n" +
+                        ")\n";
+        try (Connection c = DBConnector.getReadConnection();
+             PreparedStatement s = c.prepareStatement(candidates +
+                     "SELECT c.candidate, c.mutualFriends, COUNT(*) AS sharedGroups\n" +
+                     "FROM candidates c\n" +
+                     "INNER JOIN groups A ON A.studentId = c.candidate\n" +
+                     "INNER JOIN groups B ON B.groupId = A.groupId\n" +
+                     "WHERE B.studentId = ?\n" +
+                     "GROUP BY c.candidate, c.mutualFriends");
+             PreparedStatement profiles = c.prepareStatement("SELECT * FROM students\n" +
+                     "WHERE id = ANY(?)")) {
+            //every parameter of both forms of the query is the student id
+            int parameters = maintained ? 4 : 3;
+            for (int i = 1; i <= parameters; i++)
+                s.setInt(i, studentId);
+            PriorityQueue<int[]> heap = new PriorityQueue<>(k, CANDIDATE_RANK.reversed());
+            ResultSet rs = s.executeQuery();
+            while (rs.next()) {
+                int[] candidate = {rs.getInt(1), rs.getInt(2), rs.getInt(3)};
+                if (heap.size() < k) {
+                    heap.add(candidate);
+                } else if (CANDIDATE_RANK.compare(candidate, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(candidate);
+                }
+            }
+            if (heap.isEmpty())
+                return new ArrayList<>();
+
+            int[][] top = heap.toArray(new int[heap.size()][]);
+            Arrays.sort(top, CANDIDATE_RANK);
+            Integer[] ids = new Integer[top.length];
+            for (int i = 0; i < top.length; i++)
+                ids[i] = top[i][0];
+            profiles.setArray(1, c.createArrayOf("integer", ids));
+            HashMap<Integer, Student> students = new HashMap<>();
+            rs = profiles.executeQuery();
+            RowMapper<Student> mapper = STUDENT_MAPPER.forResultSet(rs);
+            while (rs.next()) {
+                Student std = mapper.map(rs);
+                students.put(std.getId(), std);
+            }
+
+            ArrayList<RankedStudent> l = new ArrayList<>();
+            for (int[] candidate : top) {
+                RankedStudent r = new RankedStudent();
+                r.setStudent(students.get(candidate[0]));
+                r.setMutualFriends(candidate[1]);
+                r.setSharedGroups(candidate[2]);
+                l.add(r);
+            }
+            return l;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
     /**
      * Returns a list of student id pairs (s1, s2) such that the degrees of separation (definition follows)
      * between s1 and s2 is at least 5.
@@ -698,22 +1887,15 @@ public class Solution {
      * output: an ArrayList containing the student pairs. In case of an error, return an empty ArrayList
      */
     public static ArrayList<StudentIdPair> getRemotelyConnectedPairs() {
-        try (Connection c = DBConnector.getConnection();
+        try (Connection c = DBConnector.getReadConnection();
              PreparedStatement s = c.prepareStatement("WITH RECURSIVE\n" +
-                     "friendship AS (\n" +
-                     "\tSELECT id1,id2\n" +
-                     "\tFROM friends\n" +
-                     "\tUNION\n" +
-                     "\tSELECT id2,id1\n" +
-                     "\tFROM friends\n" +
-                     ")\n" +
-                     ", find_paths(source, destination, length, path, cycle) AS\n" +
+                     "find_paths(source, destination, length, path, cycle) AS\n" +
                      "(\n" +
                      "\tSELECT id1, id2, 1,ARRAY[id1],false\n" +
-                     "\tFROM friendship f\n" +
+                     "\tFROM friends f\n" +
                      "\tUNION ALL\n" +
                      "\tSELECT fp.source, f.id2, fp.length + 1,path || f.id1, f.id1 = ANY(path) OR f.id2 = ANY(path)\n" +
-                     "\tFROM friendship f, find_paths fp\n" +
+                     "\tFROM friends f, find_paths fp\n" +
                      "\tWHERE f.id1 = fp.destination AND NOT cycle\n" +
                      ")\n" +
                      "SELECT DISTINCT source,destination\n" +
@@ -740,6 +1922,127 @@ public class Solution {
         }
     }
 
+    /**
+     * Breadth first search over Friends that stops expanding after k hops.
+     * Each hop is a single lookup of the friends of the whole frontier, and every student is visited once.
+     * output: levels.get(d - 1) holds the ids of the students at distance d from the given student
+     */
+    private static ArrayList<int[]> friendsWithinDistance(int studentId, int k, Connection c) throws SQLException {
+        ArrayList<int[]> levels = new ArrayList<>();
+        //sparse in the id space, so a single huge id costs a container, not a bit per smaller id
+        RoaringBitmap visited = new RoaringBitmap();
+        visited.add(studentId);
+        Integer[] frontier = {studentId};
+        try (PreparedStatement s = c.prepareStatement("SELECT DISTINCT id2\n" +
+                "FROM friends\n" +
+                "WHERE id1 = ANY(?)")) {
+            for (int d = 1; d <= k && frontier.length > 0; d++) {
+                s.setArray(1, c.createArrayOf("integer", frontier));
+                ResultSet rs = s.executeQuery();
+                ArrayList<Integer> next = new ArrayList<>();
+                while (rs.next()) {
+                    int id = rs.getInt(1);
+                    if (!visited.contains(id)) {
+                        visited.add(id);
+                        next.add(id);
+                    }
+                }
+                if (next.isEmpty())
+                    break;
+                int[] level = new int[next.size()];
+                for (int i = 0; i < level.length; i++)
+                    level[i] = next.get(i);
+                Arrays.sort(level);
+                levels.add(level);
+                frontier = next.toArray(new Integer[next.size()]);
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * Gets the students whose degrees of separation (see getRemotelyConnectedPairs) from the given student
+     * are between 1 and k, grouped by that distance.
+     * input: student id, maximal distance k
+     * output: a map from each distance to the students at exactly that distance, ordered by id.
+     * Distances without students are omitted. In case of an error, return an empty map
+     */
+    public static TreeMap<Integer, ArrayList<Student>> getStudentsByDistance(Integer studentId, int k) {
+        TreeMap<Integer, ArrayList<Student>> byDistance = new TreeMap<>();
+        try (Connection c = DBConnector.getReadConnection();
+             PreparedStatement profiles = c.prepareStatement("SELECT * FROM students\n" +
+                     "WHERE id = ANY(?)")) {
+            ArrayList<int[]> levels = friendsWithinDistance(studentId, k, c);
+            if (levels.isEmpty())
+                return byDistance;
+            ArrayList<Integer> ids = new ArrayList<>();
+            for (int[] level : levels)
+                for (int id : level)
+                    ids.add(id);
+            profiles.setArray(1, c.createArrayOf("integer", ids.toArray()));
+            HashMap<Integer, Student> students = new HashMap<>();
+            ResultSet rs = profiles.executeQuery();
+            RowMapper<Student> mapper = STUDENT_MAPPER.forResultSet(rs);
+            while (rs.next()) {
+                Student std = mapper.map(rs);
+                students.put(std.getId(), std);
+            }
+            for (int d = 1; d <= levels.size(); d++) {
+                ArrayList<Student> l = new ArrayList<>();
+                for (int id : levels.get(d - 1))
+                    l.add(students.get(id));
+                byDistance.put(d, l);
+            }
+            return byDistance;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new TreeMap<>();
+        }
+    }
+
+    /**
+     * Gets the students whose degrees of separation (see getRemotelyConnectedPairs) from the given student
+     * are between 1 and k.
+     * input: student id, maximal distance k
+     * output: an ArrayList containing the students, ordered by distance and then by id. In case of an error, return an empty ArrayList
+     */
+    public static ArrayList<Student> getStudentsWithinDistance(Integer studentId, int k) {
+        ArrayList<Student> l = new ArrayList<>();
+        for (ArrayList<Student> level : getStudentsByDistance(studentId, k).values())
+            l.addAll(level);
+        return l;
+    }
+
+    /**
+     * Approximates the distribution of the degrees of separation (see getRemotelyConnectedPairs) over all pairs
+     * of connected students, using HyperLogLog counters propagated one hop at a time (see FriendGraph).
+     * The graph is read once, and the computation runs in parallel in memory linear in the number of students.
+     * Accuracy is set by log2m: each cumulative count has a relative standard error of about 1.04 / sqrt(2^log2m),
+     * at a cost of 2 * 2^log2m bytes per student.
+     * input: log2m between 4 and 16
+     * output: a map from each distance to the estimated number of unordered pairs of students at that distance.
+     * In case of an error, or log2m out of range, return an empty map
+     */
+    public static TreeMap<Integer, Long> getSeparationDistribution(int log2m) {
+        if (log2m < HyperLogLogCounters.MIN_LOG2M || log2m > HyperLogLogCounters.MAX_LOG2M)
+            return new TreeMap<>();
+        FriendGraph graph;
+        try (Connection c = DBConnector.getReadConnection()) {
+            graph = FriendGraph.load(c);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new TreeMap<>();
+        }
+        double[] neighbourhood = graph.neighbourhoodFunction(log2m, graph.size());
+        TreeMap<Integer, Long> distribution = new TreeMap<>();
+        for (int t = 1; t < neighbourhood.length; t++) {
+            long pairs = Math.round((neighbourhood[t] - neighbourhood[t - 1]) / 2);
+            if (pairs > 0)
+                distribution.put(t, pairs);
+        }
+        return distribution;
+    }
+
 
 }
 
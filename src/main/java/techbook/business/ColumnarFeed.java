@@ -0,0 +1,480 @@
+package techbook.business;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * A Feed stored column by column: ids, authors, likes and dates in primitive arrays, and texts in their own array.
+ * A post costs about 28 bytes plus its text, instead of a Post with three boxed integers and a LocalDateTime.
+ * It is a Feed, so the feed operations may return it (see feed.columnar): every List operation works on the columns,
+ * get(i) builds a Post of row i, and set(i, post) writes one. view(i) reads row i in place through a PostView that
+ * holds only the feed and the row number, until rows are added, removed or reordered. Dates are kept in
+ * microseconds, the precision of a TIMESTAMP column.
+ */
+public class ColumnarFeed extends Feed {
+
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    //the storage, Feed's own array stays empty
+    private final Rows rows;
+
+    public ColumnarFeed() {
+        this(16);
+    }
+
+    public ColumnarFeed(int capacity) {
+        rows = new Rows(Math.max(capacity, 1));
+    }
+
+    private static long toMicros(LocalDateTime date) {
+        if (date == null)
+            return NO_DATE;
+        return ChronoUnit.MICROS.between(EPOCH, date);
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        if (micros == NO_DATE)
+            return null;
+        return EPOCH.plus(micros, ChronoUnit.MICROS);
+    }
+
+    public void append(int id, int author, String text, LocalDateTime date, int likesCount) {
+        rows.insert(rows.size, id, author, text, toMicros(date), likesCount);
+    }
+
+    public void append(int id, int author, String text, Timestamp date, int likesCount) {
+        append(id, author, text, date == null ? null : date.toLocalDateTime(), likesCount);
+    }
+
+    public int getId(int index) {
+        return rows.ids[rows.check(index)];
+    }
+
+    public int getAuthor(int index) {
+        return rows.authors[rows.check(index)];
+    }
+
+    public String getText(int index) {
+        return rows.texts[rows.check(index)];
+    }
+
+    public int getLikes(int index) {
+        return rows.likeCounts[rows.check(index)];
+    }
+
+    public LocalDateTime getDate(int index) {
+        return fromMicros(rows.dates[rows.check(index)]);
+    }
+
+    /**
+     * output: a view of row index that reads the columns, so it sees later set(index, post) calls.
+     * Once rows are added, removed or reordered the row may hold another post, so the view throws
+     * ConcurrentModificationException instead
+     */
+    public PostView view(int index) {
+        return new RowView(rows.check(index));
+    }
+
+    /**
+     * Copies the posts into a regular Feed, e.g. to keep them after the columnar feed is discarded.
+     */
+    public Feed toFeed() {
+        Feed f = new Feed();
+        f.ensureCapacity(rows.size);
+        for (int i = 0; i < rows.size; i++)
+            f.add(rows.get(i));
+        return f;
+    }
+
+    //a ColumnarFeed is serialized as the regular Feed of its posts
+    private Object writeReplace() {
+        return toFeed();
+    }
+
+    //every public operation of Feed is answered by the columns
+
+    @Override
+    public int size() {
+        return rows.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return rows.size == 0;
+    }
+
+    @Override
+    public Post get(int index) {
+        return rows.get(index);
+    }
+
+    @Override
+    public Post set(int index, Post post) {
+        return rows.set(index, post);
+    }
+
+    @Override
+    public boolean add(Post post) {
+        return rows.add(post);
+    }
+
+    @Override
+    public void add(int index, Post post) {
+        rows.add(index, post);
+    }
+
+    @Override
+    public Post remove(int index) {
+        return rows.remove(index);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return rows.remove(o);
+    }
+
+    @Override
+    public void clear() {
+        rows.clear();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Post> c) {
+        rows.reserve(rows.size + c.size());
+        return rows.addAll(c);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends Post> c) {
+        return rows.addAll(index, c);
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        rows.subList(fromIndex, toIndex).clear();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        return rows.removeAll(c);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        return rows.retainAll(c);
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super Post> filter) {
+        return rows.removeIf(filter);
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<Post> operator) {
+        rows.replaceAll(operator);
+    }
+
+    @Override
+    public void sort(Comparator<? super Post> c) {
+        rows.sort(c);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return rows.contains(o);
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        return rows.containsAll(c);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return rows.indexOf(o);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return rows.lastIndexOf(o);
+    }
+
+    @Override
+    public Object[] toArray() {
+        return rows.toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        return rows.toArray(a);
+    }
+
+    @Override
+    public Iterator<Post> iterator() {
+        return rows.iterator();
+    }
+
+    @Override
+    public ListIterator<Post> listIterator() {
+        return rows.listIterator();
+    }
+
+    @Override
+    public ListIterator<Post> listIterator(int index) {
+        return rows.listIterator(index);
+    }
+
+    @Override
+    public List<Post> subList(int fromIndex, int toIndex) {
+        return rows.subList(fromIndex, toIndex);
+    }
+
+    @Override
+    public void forEach(Consumer<? super Post> action) {
+        rows.forEach(action);
+    }
+
+    @Override
+    public Spliterator<Post> spliterator() {
+        return rows.spliterator();
+    }
+
+    @Override
+    public void ensureCapacity(int minCapacity) {
+        rows.reserve(minCapacity);
+    }
+
+    @Override
+    public void trimToSize() {
+        rows.resize(Math.max(rows.size, 1));
+    }
+
+    @Override
+    public Object clone() {
+        ColumnarFeed copy = new ColumnarFeed(rows.size);
+        copy.addAll(this);
+        return copy;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return rows.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return rows.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return rows.toString();
+    }
+
+    //the sequenced methods that ArrayList implements on its own array since Java 21
+
+    public Post getFirst() {
+        return rows.get(0);
+    }
+
+    public Post getLast() {
+        return rows.get(rows.size - 1);
+    }
+
+    public void addFirst(Post post) {
+        rows.add(0, post);
+    }
+
+    public void addLast(Post post) {
+        rows.add(post);
+    }
+
+    public Post removeFirst() {
+        return rows.remove(0);
+    }
+
+    public Post removeLast() {
+        return rows.remove(rows.size - 1);
+    }
+
+    private final class Rows extends AbstractList<Post> implements RandomAccess {
+
+        private int size = 0;
+        private int[] ids;
+        private int[] authors;
+        private int[] likeCounts;
+        private long[] dates;
+        private String[] texts;
+
+        Rows(int capacity) {
+            ids = new int[capacity];
+            authors = new int[capacity];
+            likeCounts = new int[capacity];
+            dates = new long[capacity];
+            texts = new String[capacity];
+        }
+
+        int modifications() {
+            return modCount;
+        }
+
+        int check(int index) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            return index;
+        }
+
+        void resize(int capacity) {
+            ids = Arrays.copyOf(ids, capacity);
+            authors = Arrays.copyOf(authors, capacity);
+            likeCounts = Arrays.copyOf(likeCounts, capacity);
+            dates = Arrays.copyOf(dates, capacity);
+            texts = Arrays.copyOf(texts, capacity);
+        }
+
+        void reserve(int capacity) {
+            if (capacity > ids.length)
+                resize(Math.max(capacity, ids.length * 2));
+        }
+
+        void insert(int index, int id, int author, String text, long date, int likesCount) {
+            reserve(size + 1);
+            if (index < size) {
+                System.arraycopy(ids, index, ids, index + 1, size - index);
+                System.arraycopy(authors, index, authors, index + 1, size - index);
+                System.arraycopy(likeCounts, index, likeCounts, index + 1, size - index);
+                System.arraycopy(dates, index, dates, index + 1, size - index);
+                System.arraycopy(texts, index, texts, index + 1, size - index);
+            }
+            ids[index] = id;
+            authors[index] = author;
+            texts[index] = text;
+            dates[index] = date;
+            likeCounts[index] = likesCount;
+            size++;
+            modCount++;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Post get(int index) {
+            check(index);
+            Post p = new Post();
+            p.setId(ids[index]);
+            p.setAuthor(authors[index]);
+            p.setText(texts[index]);
+            p.setDate(fromMicros(dates[index]));
+            p.setLikes(likeCounts[index]);
+            return p;
+        }
+
+        @Override
+        public Post set(int index, Post post) {
+            Post old = get(index);
+            ids[index] = post.getId();
+            authors[index] = post.getAuthor();
+            texts[index] = post.getText();
+            dates[index] = toMicros(post.getDate());
+            likeCounts[index] = post.getLikes() == null ? 0 : post.getLikes();
+            return old;
+        }
+
+        @Override
+        public void add(int index, Post post) {
+            if (index < 0 || index > size)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            insert(index, post.getId(), post.getAuthor(), post.getText(), toMicros(post.getDate()),
+                    post.getLikes() == null ? 0 : post.getLikes());
+        }
+
+        @Override
+        public Post remove(int index) {
+            Post old = get(index);
+            int moved = size - index - 1;
+            System.arraycopy(ids, index + 1, ids, index, moved);
+            System.arraycopy(authors, index + 1, authors, index, moved);
+            System.arraycopy(likeCounts, index + 1, likeCounts, index, moved);
+            System.arraycopy(dates, index + 1, dates, index, moved);
+            System.arraycopy(texts, index + 1, texts, index, moved);
+            texts[--size] = null;
+            modCount++;
+            return old;
+        }
+
+        @Override
+        public void clear() {
+            Arrays.fill(texts, 0, size, null);
+            size = 0;
+            modCount++;
+        }
+
+        //sorting moves rows through set, which leaves modCount as it is
+        @Override
+        public void sort(Comparator<? super Post> c) {
+            super.sort(c);
+            modCount++;
+        }
+    }
+
+    //reads its row on every call, and holds only the feed, the row number and the modifications it was made at
+    private final class RowView implements PostView {
+
+        private final int index;
+        private final int modifications;
+
+        RowView(int index) {
+            this.index = index;
+            this.modifications = rows.modifications();
+        }
+
+        private int row() {
+            if (rows.modifications() != modifications)
+                throw new ConcurrentModificationException("the rows moved since the view was made");
+            return index;
+        }
+
+        @Override
+        public Integer getId() {
+            return rows.ids[row()];
+        }
+
+        @Override
+        public Integer getAuthor() {
+            return rows.authors[row()];
+        }
+
+        @Override
+        public String getText() {
+            return rows.texts[row()];
+        }
+
+        @Override
+        public Integer getLikes() {
+            return rows.likeCounts[row()];
+        }
+
+        @Override
+        public LocalDateTime getDate() {
+            return fromMicros(rows.dates[row()]);
+        }
+    }
+}
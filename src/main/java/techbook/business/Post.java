@@ -6,7 +6,7 @@ import java.sql.Timestamp;
 import java.time.LocalDateTime;
 
 
-public class Post {
+public class Post implements PostView {
 
     Integer id = -1;
     Integer author = -1;
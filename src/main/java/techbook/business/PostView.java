@@ -0,0 +1,19 @@
+package techbook.business;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read access to the fields of a post, implemented by Post and by the row views of a ColumnarFeed.
+ */
+public interface PostView {
+
+    Integer getId();
+
+    Integer getAuthor();
+
+    String getText();
+
+    Integer getLikes();
+
+    LocalDateTime getDate();
+}
@@ -0,0 +1,63 @@
+package techbook.business;
+
+public class RankedStudent {
+
+    Student student = null;
+    Integer mutualFriends = 0;
+    Integer sharedGroups = 0;
+
+    public Student getStudent() {
+        return student;
+    }
+
+    public void setStudent(Student student) {
+        this.student = student;
+    }
+
+    public Integer getMutualFriends() {
+        return mutualFriends;
+    }
+
+    public void setMutualFriends(Integer mutualFriends) {
+        this.mutualFriends = mutualFriends;
+    }
+
+    public Integer getSharedGroups() {
+        return sharedGroups;
+    }
+
+    public void setSharedGroups(Integer sharedGroups) {
+        this.sharedGroups = sharedGroups;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RankedStudent)) return false;
+
+        RankedStudent that = (RankedStudent) o;
+
+        if (getStudent() != null ? !getStudent().equals(that.getStudent()) : that.getStudent() != null) return false;
+        if (getMutualFriends() != null ? !getMutualFriends().equals(that.getMutualFriends()) : that.getMutualFriends() != null)
+            return false;
+        return getSharedGroups() != null ? getSharedGroups().equals(that.getSharedGroups()) : that.getSharedGroups() == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getStudent() != null ? getStudent().hashCode() : 0;
+        result = 31 * result + (getMutualFriends() != null ? getMutualFriends().hashCode() : 0);
+        result = 31 * result + (getSharedGroups() != null ? getSharedGroups().hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("RankedStudent{");
+        sb.append("student=").append(student);
+        sb.append(", mutualFriends=").append(mutualFriends);
+        sb.append(", sharedGroups=").append(sharedGroups);
+        sb.append('}');
+        return sb.toString();
+    }
+}
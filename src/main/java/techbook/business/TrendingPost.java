@@ -0,0 +1,50 @@
+package techbook.business;
+
+public class TrendingPost {
+
+    Integer postId = null;
+    Long likes = 0L;
+
+    public Integer getPostId() {
+        return postId;
+    }
+
+    public void setPostId(Integer postId) {
+        this.postId = postId;
+    }
+
+    public Long getLikes() {
+        return likes;
+    }
+
+    public void setLikes(Long likes) {
+        this.likes = likes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TrendingPost)) return false;
+
+        TrendingPost that = (TrendingPost) o;
+
+        if (getPostId() != null ? !getPostId().equals(that.getPostId()) : that.getPostId() != null) return false;
+        return getLikes() != null ? getLikes().equals(that.getLikes()) : that.getLikes() == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getPostId() != null ? getPostId().hashCode() : 0;
+        result = 31 * result + (getLikes() != null ? getLikes().hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("TrendingPost{");
+        sb.append("postId=").append(postId);
+        sb.append(", likes=").append(likes);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,63 @@
+package techbook.data;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter of long keys: mightContain(key) is true for every key that was put, and false for other keys
+ * except with about the false positive rate it was sized for, while it holds at most its expected number of keys.
+ * Keys cannot be removed. Sized by the usual m = -n ln(p) / ln(2)^2 bits and k = m/n ln(2) hashes, derived from two
+ * 64 bit hashes of the key (h1 + i * h2). Thread safe: bits are set with compare and set, without locks.
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bits;
+    private final int hashes;
+    private final long expected;
+
+    /**
+     * input: the number of keys the filter should hold, and the false positive rate at that number
+     */
+    public BloomFilter(long expected, double falsePositiveRate) {
+        this.expected = Math.max(expected, 1);
+        double p = Math.min(Math.max(falsePositiveRate, 1e-9), 0.5);
+        long m = (long) Math.ceil(-this.expected * Math.log(p) / (Math.log(2) * Math.log(2)));
+        this.words = new AtomicLongArray((int) Math.min((m + 63) / 64, Integer.MAX_VALUE));
+        this.bits = words.length() * 64L;
+        this.hashes = Math.max(1, (int) Math.round((double) bits / this.expected * Math.log(2)));
+    }
+
+    public long getExpected() {
+        return expected;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    public void put(long key) {
+        long h1 = mix(key);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bits);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long old = words.get(word);
+            while ((old & mask) == 0 && !words.compareAndSet(word, old, old | mask))
+                old = words.get(word);
+        }
+    }
+
+    public boolean mightContain(long key) {
+        long h1 = mix(key);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bits);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,119 @@
+package techbook.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates over the rows of a query through a server side cursor.
+ * pgjdbc only fetches rows in batches of fetchSize when autocommit is off, otherwise it buffers the whole
+ * result, so the cursor runs in its own read transaction and holds at most fetchSize rows in memory.
+ * The cursor owns the connection: it is closed when the rows run out, or by close() when the caller stops early.
+ */
+public class Cursor<T> implements Iterator<T>, AutoCloseable {
+
+    private final Connection connection;
+    private final PreparedStatement statement;
+    private RowMapper<T> mapper;
+    private ResultSet rs;
+    private T next = null;
+    private boolean closed = false;
+
+    /**
+     * Same as the constructor below, with the mapper resolved once against the columns of the query.
+     */
+    public Cursor(Connection connection, PreparedStatement statement, int fetchSize, IndexedRowMapper<T> mapper)
+            throws SQLException {
+        this(connection, statement, fetchSize, (RowMapper<T>) null);
+        try {
+            this.mapper = mapper.forResultSet(rs);
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * input: a connection that the cursor takes over, a statement prepared on it with its parameters set,
+     * rows to fetch per round trip, and how to build each element
+     */
+    public Cursor(Connection connection, PreparedStatement statement, int fetchSize, RowMapper<T> mapper)
+            throws SQLException {
+        this.connection = connection;
+        this.statement = statement;
+        this.mapper = mapper;
+        try {
+            connection.setAutoCommit(false);
+            statement.setFetchSize(fetchSize);
+            rs = statement.executeQuery();
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null)
+            return true;
+        if (closed)
+            return false;
+        try {
+            if (rs.next()) {
+                next = mapper.map(rs);
+                return true;
+            }
+        } catch (SQLException e) {
+            close();
+            throw new IllegalStateException("reading from the cursor failed", e);
+        }
+        close();
+        return false;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        T current = next;
+        next = null;
+        return current;
+    }
+
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            if (rs != null)
+                rs.close();
+            statement.close();
+            //nothing was written, ending the transaction only releases the cursor
+            connection.rollback();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * A sequential stream over the cursor. Closing the stream closes the cursor.
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(this::close);
+    }
+}
@@ -4,14 +4,170 @@ import javafx.util.Pair;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DBConnector {
 
 
+    private static Properties properties = null;
+
+    private static synchronized Properties getProperties()
+    {
+        if (properties == null) {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            InputStream stream = loader.getResourceAsStream("config.properties");
+            Properties props = new Properties();
+            try {
+                props.load(stream);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            properties = props;
+        }
+        return properties;
+    }
+
+    /**
+     * Returns a setting from config.properties. A JVM system property with the same key takes precedence,
+     * so settings can be overridden per run (e.g. -DmutualFriends.maintain=true).
+     */
+    public static String getProperty(String key, String defaultValue)
+    {
+        String value = System.getProperty(key);
+        return value != null ? value : getProperties().getProperty(key, defaultValue);
+    }
+
+    private static final ThreadLocal<Connection> pinned = new ThreadLocal<>();
+
+    /**
+     * Makes getConnection() on this thread hand out c, so a sequence of calls shares one connection,
+     * until it is pinned again (null unpins it). Closing a handed out connection only rolls back what it left
+     * uncommitted and turns autocommit back on; c itself stays open and belongs to the caller.
+     * output: the connection pinned before, to restore when done
+     */
+    public static Connection pinConnection(Connection c)
+    {
+        Connection previous = pinned.get();
+        if (c == null)
+            pinned.remove();
+        else
+            pinned.set(c);
+        return previous;
+    }
+
+    private static Connection borrow(Connection c)
+    {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("close") && method.getParameterCount() == 0) {
+                        if (!c.getAutoCommit()) {
+                            c.rollback();
+                            c.setAutoCommit(true);
+                        }
+                        return null;
+                    }
+                    try {
+                        return method.invoke(c, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private static final ThreadLocal<Long> lastPrimaryUse = new ThreadLocal<>();
+    private static final AtomicInteger nextReplica = new AtomicInteger();
+
+    /**
+     * Returns a connection to the primary database, for writes and for reads that must see them.
+     * Starts the read-your-writes window of this thread (see getReadConnection).
+     */
     public static Connection getConnection()
+    {
+        Connection shared = pinned.get();
+        if (shared != null)
+            return borrow(shared);
+        lastPrimaryUse.set(System.currentTimeMillis());
+        return connect(getProperty("database", null));
+    }
+
+    /**
+     * Returns a connection to the primary database for a read that must not lag behind it, e.g. one whose result
+     * is cached. Unlike getConnection it leaves the read-your-writes window of this thread alone, so the reads
+     * that follow still go to the replicas.
+     */
+    public static Connection getPrimaryReadConnection()
+    {
+        Connection shared = pinned.get();
+        if (shared != null)
+            return borrow(shared);
+        return connect(getProperty("database", null));
+    }
+
+    /**
+     * output: the read replica urls of the comma separated replicas setting, empty if there are none
+     */
+    public static List<String> getReplicas()
+    {
+        return getUrls("replicas");
+    }
+
+    /**
+     * output: the urls of the comma separated shards setting, in shard order, empty if the data is not sharded
+     */
+    public static List<String> getShards()
+    {
+        return getUrls("shards");
+    }
+
+    private static List<String> getUrls(String key)
+    {
+        List<String> urls = new ArrayList<>();
+        for (String url : getProperty(key, "").split(","))
+            if (!url.trim().isEmpty())
+                urls.add(url.trim());
+        return urls;
+    }
+
+    /**
+     * Returns a connection to one shard itself, for maintaining its schema.
+     * The data is read and written through the primary database, which routes each row to its shard.
+     */
+    public static Connection getShardConnection(int shard)
+    {
+        return connect(getShards().get(shard));
+    }
+
+    /**
+     * Returns a connection for a read that may lag behind the primary a little.
+     * Reads are spread round robin over the replicas. A thread that used the primary in the last
+     * replicas.readYourWritesMillis milliseconds reads from the primary, so it sees its own writes;
+     * so do all reads when there are no replicas, or when the chosen replica cannot be reached.
+     * The window belongs to the thread that wrote: a read handed to another thread, e.g. the next call through
+     * AsyncSolution, which may run on any of its threads, is not covered by it and may miss the write.
+     */
+    public static Connection getReadConnection()
+    {
+        Connection shared = pinned.get();
+        if (shared != null)
+            return borrow(shared);
+        List<String> replicas = getReplicas();
+        Long lastWrite = lastPrimaryUse.get();
+        long window = Long.parseLong(getProperty("replicas.readYourWritesMillis", "0"));
+        if (!replicas.isEmpty() && (lastWrite == null || System.currentTimeMillis() - lastWrite >= window)) {
+            Connection replica = connect(replicas.get(Math.floorMod(nextReplica.getAndIncrement(), replicas.size())));
+            if (replica != null)
+                return replica;
+        }
+        return connect(getProperty("database", null));
+    }
+
+    private static Connection connect(String url)
     {
         try {
 
@@ -23,21 +179,14 @@ public class DBConnector {
 
         }
 
-        ClassLoader loader = Thread.currentThread().getContextClassLoader();
-        InputStream stream = loader.getResourceAsStream("config.properties");
-        Properties props = new Properties();
-        try {
-            props.load(stream);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        Properties props = getProperties();
 
         Connection connection = null;
 
 
         try {
 
-            connection = DriverManager.getConnection(props.getProperty("database"), props);
+            connection = DriverManager.getConnection(url, props);
 
         } catch (SQLException e) {
 
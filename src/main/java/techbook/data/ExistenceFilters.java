@@ -0,0 +1,185 @@
+package techbook.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bloom filters of the existing students, posts and friendships, so a call about an id that does not exist
+ * can be answered without a query. A false answer is certain, a true one means "maybe": keys are added by the
+ * writes made through it before they commit, so no check misses a committed row, and never removed, so deleted rows,
+ * and rows of writes that failed, stay "maybe" until the filters are built again from the tables. needsRebuild()
+ * tells when that is worth it: once the deleted rows are a quarter of the keys, or a filter holds more keys than it
+ * was sized for. While the filters are not built, or are being reset, every check answers null, "maybe".
+ * Like GroupMembers, it sees only the writes made in this JVM.
+ */
+public class ExistenceFilters {
+
+    private static final long MIN_EXPECTED = 1024;
+    private static final int STUDENTS = 0;
+    private static final int POSTS = 1;
+    private static final int FRIENDSHIPS = 2;
+
+    private static final class Filters {
+        final BloomFilter[] blooms = new BloomFilter[3];
+        final AtomicLong[] keys = {new AtomicLong(), new AtomicLong(), new AtomicLong()};
+        final AtomicLong deleted = new AtomicLong();
+        volatile boolean full = false;
+
+        /**
+         * input: the rows of each table, the false positive rate of each filter
+         */
+        Filters(long[] rows, double falsePositiveRate) {
+            for (int i = 0; i < blooms.length; i++)
+                blooms[i] = new BloomFilter(Math.max(2 * rows[i], MIN_EXPECTED), falsePositiveRate);
+        }
+
+        long keys() {
+            return keys[STUDENTS].get() + keys[POSTS].get() + keys[FRIENDSHIPS].get();
+        }
+    }
+
+    //null while not built
+    private volatile Filters filters = null;
+    //writes share the lock until they are done, a build takes it alone, so it sees the rows of all the keys put
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * output: the key of the friendship of two students, the same in both directions
+     */
+    public static long friendship(int id1, int id2) {
+        return ((long) Math.min(id1, id2) << 32) | (Math.max(id1, id2) & 0xffffffffL);
+    }
+
+    public boolean isBuilt() {
+        return filters != null;
+    }
+
+    public boolean needsRebuild() {
+        Filters f = filters;
+        return f != null && (f.full || f.deleted.get() > Math.max(f.keys() / 4, MIN_EXPECTED / 4));
+    }
+
+    private static long count(Connection c, String query) throws SQLException {
+        try (PreparedStatement s = c.prepareStatement(query)) {
+            ResultSet rs = s.executeQuery();
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static void load(Connection c, String query, Filters f, int filter) throws SQLException {
+        try (PreparedStatement s = c.prepareStatement(query)) {
+            s.setFetchSize(10000);
+            ResultSet rs = s.executeQuery();
+            while (rs.next()) {
+                f.blooms[filter].put(filter == FRIENDSHIPS ? friendship(rs.getInt(1), rs.getInt(2)) : rs.getInt(1));
+                f.keys[filter].incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Builds the filters from the tables, sized for twice their rows.
+     * input: a connection to the database holding the tables, the false positive rate of each filter
+     */
+    public void build(Connection c, double falsePositiveRate) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            Filters f = new Filters(new long[]{count(c, "SELECT COUNT(*) FROM Students"),
+                    count(c, "SELECT COUNT(*) FROM posts"), count(c, "SELECT COUNT(*) / 2 FROM Friends")},
+                    falsePositiveRate);
+            load(c, "SELECT id FROM Students", f, STUDENTS);
+            load(c, "SELECT id FROM posts", f, POSTS);
+            load(c, "SELECT id1, id2 FROM Friends WHERE id1 < id2", f, FRIENDSHIPS);
+            filters = f;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * input: whether the tables are known to be empty (after they were created or emptied), or the filters
+     * must be built again before use; the false positive rate of each filter
+     */
+    public void reset(boolean empty, double falsePositiveRate) {
+        lock.writeLock().lock();
+        try {
+            filters = empty ? new Filters(new long[3], falsePositiveRate) : null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * output: false if the key is certainly not in the filter, true if it may be, or null if the filters are not built
+     */
+    private Boolean mightContain(long key, int filter) {
+        Filters f = filters;
+        return f == null ? null : f.blooms[filter].mightContain(key);
+    }
+
+    public Boolean mightHaveStudent(int id) {
+        return mightContain(id, STUDENTS);
+    }
+
+    public Boolean mightHavePost(int id) {
+        return mightContain(id, POSTS);
+    }
+
+    public Boolean mightHaveFriendship(int id1, int id2) {
+        return mightContain(friendship(id1, id2), FRIENDSHIPS);
+    }
+
+    /**
+     * A write that creates rows: a build waits from when it starts until it is closed, which must be once the write
+     * committed or failed, and the keys of its rows are added before it runs the statement that creates them.
+     */
+    public final class Write implements AutoCloseable {
+
+        private Write() {
+            lock.readLock().lock();
+        }
+
+        private void put(long key, int filter) {
+            Filters f = filters;
+            if (f == null)
+                return;
+            f.blooms[filter].put(key);
+            if (f.keys[filter].incrementAndGet() > f.blooms[filter].getExpected())
+                f.full = true;
+        }
+
+        public void addStudent(int id) {
+            put(id, STUDENTS);
+        }
+
+        public void addPost(int id) {
+            put(id, POSTS);
+        }
+
+        public void addFriendship(int id1, int id2) {
+            put(friendship(id1, id2), FRIENDSHIPS);
+        }
+
+        @Override
+        public void close() {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Write write() {
+        return new Write();
+    }
+
+    /**
+     * input: the number of rows deleted, whose keys the filters still hold
+     */
+    public void deleted(long rows) {
+        Filters f = filters;
+        if (f != null)
+            f.deleted.addAndGet(rows);
+    }
+}
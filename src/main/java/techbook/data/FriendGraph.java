@@ -0,0 +1,138 @@
+package techbook.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * An in-memory snapshot of the friendship graph in compressed sparse row form.
+ * Students are numbered 0..size()-1 in id order, and the friends of student i are
+ * targets[offsets[i]] .. targets[offsets[i + 1] - 1].
+ */
+public class FriendGraph {
+
+    private final int[] ids;
+    private final int[] offsets;
+    private final int[] targets;
+
+    private FriendGraph(int[] ids, int[] offsets, int[] targets) {
+        this.ids = ids;
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    private static int[] toArray(ResultSet rs, int columns, int expected) throws SQLException {
+        int[] values = new int[Math.max(expected, 16) * columns];
+        int n = 0;
+        while (rs.next()) {
+            if (n + columns > values.length)
+                values = Arrays.copyOf(values, values.length * 2);
+            for (int i = 1; i <= columns; i++)
+                values[n++] = rs.getInt(i);
+        }
+        return Arrays.copyOf(values, n);
+    }
+
+    /**
+     * Reads the students and the friendships in one REPEATABLE READ transaction, so both reads see one snapshot.
+     * On a connection already in a transaction they are read in it, and a friendship of a student the read of the
+     * students did not see is left out.
+     * input: a connection to the database holding Students and Friends
+     */
+    public static FriendGraph load(Connection c) throws SQLException {
+        if (!c.getAutoCommit())
+            return read(c);
+        int isolation = c.getTransactionIsolation();
+        c.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        c.setAutoCommit(false);
+        try {
+            return read(c);
+        } finally {
+            //the reads changed nothing, so the transaction is ended by a rollback
+            c.rollback();
+            c.setAutoCommit(true);
+            c.setTransactionIsolation(isolation);
+        }
+    }
+
+    private static FriendGraph read(Connection c) throws SQLException {
+        try (PreparedStatement students = c.prepareStatement("SELECT id FROM students ORDER BY id");
+             PreparedStatement friends = c.prepareStatement("SELECT id1, id2 FROM friends ORDER BY id1")) {
+            int[] ids = toArray(students.executeQuery(), 1, 1024);
+            //every friendship is stored in both directions, so these are already the outgoing edges of each student
+            int[] edges = toArray(friends.executeQuery(), 2, 1024);
+            int n = 0;
+            for (int e = 0; e < edges.length; e += 2) {
+                int from = Arrays.binarySearch(ids, edges[e]);
+                int to = Arrays.binarySearch(ids, edges[e + 1]);
+                if (from >= 0 && to >= 0) {
+                    edges[n++] = from;
+                    edges[n++] = to;
+                }
+            }
+            int[] offsets = new int[ids.length + 1];
+            int[] targets = new int[n / 2];
+            for (int e = 0; e < n; e += 2)
+                offsets[edges[e] + 1]++;
+            for (int i = 0; i < ids.length; i++)
+                offsets[i + 1] += offsets[i];
+            for (int e = 0; e < n; e += 2)
+                targets[e / 2] = edges[e + 1];
+            return new FriendGraph(ids, offsets, targets);
+        }
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public int getStudentId(int node) {
+        return ids[node];
+    }
+
+    /**
+     * Approximates the neighbourhood function of the graph (HyperANF): N(t) is the number of ordered pairs (x, y),
+     * including x = y, such that the distance from x to y is at most t.
+     * Every student holds a HyperLogLog counter of the students within distance t, and step t + 1 replaces it
+     * by the union of its own counter and its friends' counters. Each step runs in parallel over the students,
+     * and memory is two arrays of size() * 2^log2m bytes. Every N(t) has a relative standard error of about
+     * 1.04 / sqrt(2^log2m).
+     * input: log2m between 4 and 16, maximal distance to compute
+     * output: N(0), N(1), ... up to maxDistance or until the counters stop changing
+     */
+    public double[] neighbourhoodFunction(int log2m, int maxDistance) {
+        int n = size();
+        HyperLogLogCounters current = new HyperLogLogCounters(n, log2m);
+        HyperLogLogCounters next = new HyperLogLogCounters(n, log2m);
+        for (int i = 0; i < n; i++)
+            current.add(i, ids[i]);
+
+        double[] function = new double[Math.min(maxDistance, n) + 1];
+        function[0] = sum(current);
+        int t = 0;
+        while (t < function.length - 1) {
+            final HyperLogLogCounters from = current;
+            final HyperLogLogCounters to = next;
+            int changed = IntStream.range(0, n).parallel().map(i -> {
+                to.copy(i, from, i);
+                boolean grew = false;
+                for (int e = offsets[i]; e < offsets[i + 1]; e++)
+                    grew |= to.union(i, from, targets[e]);
+                return grew ? 1 : 0;
+            }).sum();
+            if (changed == 0)
+                break;
+            current = to;
+            next = from;
+            function[++t] = sum(current);
+        }
+        return Arrays.copyOf(function, t + 1);
+    }
+
+    private static double sum(HyperLogLogCounters counters) {
+        return IntStream.range(0, counters.size()).parallel().mapToDouble(counters::count).sum();
+    }
+}
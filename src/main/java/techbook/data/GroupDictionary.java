@@ -0,0 +1,105 @@
+package techbook.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps group names to the integer ids that Groups and posts store, through the GroupNames(id, name) table.
+ * A group gets an id the first time a student joins it, by the statement that adds the student (see idQuery),
+ * and keeps it, so mappings are cached for good once committed, and only the first use of a group in this JVM
+ * reads or writes GroupNames. Unknown names are not cached, since another process may create the group at any time.
+ */
+public class GroupDictionary {
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, String> names = new ConcurrentHashMap<>();
+
+    private void cache(String name, int id) {
+        ids.put(name, id);
+        names.put(id, name);
+    }
+
+    /**
+     * input: a connection to the database holding GroupNames, group name
+     * output: the id of the group, or null if there is no such group (or name is null)
+     */
+    public Integer find(Connection c, String name) throws SQLException {
+        if (name == null)
+            return null;
+        Integer id = ids.get(name);
+        if (id != null)
+            return id;
+        try (PreparedStatement s = c.prepareStatement("SELECT id FROM GroupNames WHERE name = ?")) {
+            s.setString(1, name);
+            ResultSet rs = s.executeQuery();
+            if (!rs.next())
+                return null;
+            cache(name, rs.getInt(1));
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * input: group name
+     * output: the id of the group if it is cached, else null
+     */
+    public Integer known(String name) {
+        return name == null ? null : ids.get(name);
+    }
+
+    /**
+     * Caches the id of a group that a statement of idQuery stored on c, if it is committed: when c is in a
+     * transaction, which may still roll the group back, the id is left to find.
+     */
+    public void learn(Connection c, String name, Integer id) throws SQLException {
+        if (name != null && id != null && c.getAutoCommit())
+            cache(name, id);
+    }
+
+    /**
+     * Returns the query of a WITH clause that gives the id of a group, for the statement that stores the id,
+     * so a new group is created by that statement and only if it commits. A group being created by another
+     * connection is waited for, and its id is taken. The id is in the id column; the group is only created when
+     * the rows the id is wanted for exist.
+     * Its one parameter is the id of the group when it is known (see known), else the group name.
+     * input: whether the id is known, the WITH query of the rows the id is wanted for
+     */
+    public static String idQuery(boolean known, String rows) {
+        if (known)
+            return "SELECT ?::integer AS id";
+        return String.format("INSERT INTO GroupNames(name) SELECT ?::text FROM %s\n" +
+                "ON CONFLICT (name) DO UPDATE SET name = EXCLUDED.name\n" +
+                "RETURNING id", rows);
+    }
+
+    /**
+     * input: a connection to the database holding GroupNames, group id
+     * output: the name of the group, or null if there is no such group (or id is null)
+     */
+    public String name(Connection c, Integer id) throws SQLException {
+        if (id == null)
+            return null;
+        String name = names.get(id);
+        if (name != null)
+            return name;
+        try (PreparedStatement s = c.prepareStatement("SELECT name FROM GroupNames WHERE id = ?")) {
+            s.setInt(1, id);
+            ResultSet rs = s.executeQuery();
+            if (!rs.next())
+                return null;
+            cache(rs.getString(1), id);
+            return rs.getString(1);
+        }
+    }
+
+    /**
+     * Forgets all groups, after GroupNames was emptied or dropped.
+     */
+    public void clear() {
+        ids.clear();
+        names.clear();
+    }
+}
@@ -0,0 +1,260 @@
+package techbook.data;
+
+import techbook.business.Post;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Caches the newest posts of each group in feed order, so the first page of a group feed needs no query.
+ * Each group keeps at most postsPerGroup posts in a ring buffer, where a new post is prepended in O(1),
+ * and the writes to posts and likes are applied to it in place. A group whose window holds all its posts
+ * is complete and answers any request; otherwise only requests for at most the posts in the window.
+ * Groups are evicted least recently used first once the estimated size of all windows exceeds budgetBytes.
+ * The cache sees only the writes made through it, in this JVM.
+ */
+public class GroupFeedCache {
+
+    //object headers, the boxed fields and the LocalDateTime of a post, without its text
+    private static final int POST_BYTES = 120;
+
+    private final class Window {
+        final Post[] slots;
+        int head = 0;
+        int size = 0;
+        boolean complete;
+        long bytes = 0;
+
+        Window(int capacity, boolean complete) {
+            this.slots = new Post[capacity];
+            this.complete = complete;
+        }
+
+        Post get(int i) {
+            return slots[(head + i) % slots.length];
+        }
+
+        void set(int i, Post post) {
+            slots[(head + i) % slots.length] = post;
+        }
+
+        int find(int postId) {
+            for (int i = 0; i < size; i++)
+                if (get(i).getId() == postId)
+                    return i;
+            return -1;
+        }
+
+        /**
+         * output: the position of post in the window, by binary search over the feed order
+         */
+        int position(Post post) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (order.compare(get(middle), post) < 0)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            return low;
+        }
+
+        void insert(int i, Post post) {
+            if (size == slots.length) {
+                complete = false;
+                if (i == size)
+                    return;
+                remove(size - 1);
+            }
+            if (i == 0) {
+                head = (head + slots.length - 1) % slots.length;
+            } else {
+                for (int j = size; j > i; j--)
+                    set(j, get(j - 1));
+            }
+            set(i, post);
+            size++;
+            resize(bytes(post));
+        }
+
+        Post remove(int i) {
+            Post post = get(i);
+            for (int j = i; j < size - 1; j++)
+                set(j, get(j + 1));
+            set(--size, null);
+            resize(-bytes(post));
+            return post;
+        }
+
+        void resize(long delta) {
+            bytes += delta;
+            totalBytes += delta;
+        }
+    }
+
+    private final int postsPerGroup;
+    private final long budgetBytes;
+    private final Comparator<Post> order;
+    private final LinkedHashMap<String, Window> windows = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+    private long stamp = 0;
+
+    /**
+     * input: the feed order, posts kept per group, estimated memory for all groups (0 disables the cache)
+     */
+    public GroupFeedCache(Comparator<Post> order, int postsPerGroup, long budgetBytes) {
+        this.order = order;
+        this.postsPerGroup = Math.max(postsPerGroup, 1);
+        this.budgetBytes = budgetBytes;
+    }
+
+    public int getPostsPerGroup() {
+        return postsPerGroup;
+    }
+
+    private static long bytes(Post post) {
+        return POST_BYTES + 2L * (post.getText() == null ? 0 : post.getText().length());
+    }
+
+    private static Post copy(Post post) {
+        Post p = new Post();
+        p.setId(post.getId());
+        p.setAuthor(post.getAuthor());
+        p.setText(post.getText());
+        p.setDate(post.getDate());
+        p.setLikes(post.getLikes() == null ? 0 : post.getLikes());
+        return p;
+    }
+
+    private void evict() {
+        Iterator<Window> eldest = windows.values().iterator();
+        while (totalBytes > budgetBytes && eldest.hasNext()) {
+            totalBytes -= eldest.next().bytes;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Changes on every write, so a caller can tell whether posts it read from the database may already be stale.
+     */
+    public synchronized long stamp() {
+        return stamp;
+    }
+
+    /**
+     * input: group, number of posts, or -1 for all of them
+     * output: copies of the first limit posts of the group feed, or null if the cache cannot tell
+     */
+    public synchronized List<Post> get(String group, int limit) {
+        Window w = group == null ? null : windows.get(group);
+        if (w == null || !(w.complete || (limit >= 0 && limit <= w.size)))
+            return null;
+        int n = limit < 0 ? w.size : Math.min(limit, w.size);
+        List<Post> posts = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+            posts.add(copy(w.get(i)));
+        return posts;
+    }
+
+    /**
+     * Caches the newest posts of a group, read from the database after stamp() returned stamp.
+     * input: group, its newest posts in feed order, whether they are all of its posts, the stamp
+     */
+    public synchronized void put(String group, List<Post> newest, boolean complete, long stamp) {
+        if (group == null || budgetBytes <= 0 || stamp != this.stamp)
+            return;
+        Window old = windows.remove(group);
+        if (old != null)
+            totalBytes -= old.bytes;
+        Window w = new Window(postsPerGroup, complete && newest.size() <= postsPerGroup);
+        for (Post post : newest) {
+            if (w.size == postsPerGroup)
+                break;
+            w.insert(w.size, copy(post));
+        }
+        windows.put(group, w);
+        evict();
+    }
+
+    /**
+     * input: a post that was just added to the group, with its date as stored
+     */
+    public synchronized void added(String group, Post post) {
+        stamp++;
+        Window w = windows.get(group);
+        if (w == null || w.find(post.getId()) >= 0)
+            return;
+        Post p = copy(post);
+        int i = w.position(p);
+        //behind an incomplete window there may be older posts that are not cached
+        if (i == w.size && !w.complete)
+            return;
+        w.insert(i, p);
+        evict();
+    }
+
+    public synchronized void textChanged(String group, int postId, String text) {
+        stamp++;
+        Window w = windows.get(group);
+        int i = w == null ? -1 : w.find(postId);
+        if (i < 0)
+            return;
+        Post post = w.get(i);
+        w.resize(-bytes(post));
+        post.setText(text);
+        w.resize(bytes(post));
+        evict();
+    }
+
+    public synchronized void removed(String group, int postId) {
+        stamp++;
+        Window w = windows.get(group);
+        int i = w == null ? -1 : w.find(postId);
+        if (i >= 0)
+            w.remove(i);
+    }
+
+    /**
+     * input: group and date of a post whose number of likes just changed, and the new number of likes
+     */
+    public synchronized void likesChanged(String group, int postId, LocalDateTime date, int likes) {
+        stamp++;
+        Window w = windows.get(group);
+        if (w == null)
+            return;
+        int i = w.find(postId);
+        if (i < 0) {
+            //an uncached post with the date of the last cached one may now sort before it
+            if (!w.complete && (w.size == 0 || !date.isBefore(w.get(w.size - 1).getDate()))) {
+                windows.remove(group);
+                totalBytes -= w.bytes;
+            }
+            return;
+        }
+        Post post = w.remove(i);
+        post.setLikes(likes);
+        int j = w.position(post);
+        //at the end of an incomplete window, uncached posts may now sort before it
+        if (j < w.size || w.complete)
+            w.insert(j, post);
+    }
+
+    public synchronized void invalidate(String group) {
+        stamp++;
+        Window w = windows.remove(group);
+        if (w != null)
+            totalBytes -= w.bytes;
+    }
+
+    public synchronized void clear() {
+        stamp++;
+        windows.clear();
+        totalBytes = 0;
+    }
+}
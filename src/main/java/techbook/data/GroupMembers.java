@@ -0,0 +1,77 @@
+package techbook.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+
+/**
+ * The members of every group, as a RoaringBitmap of student ids per group id, so a membership check needs
+ * no query. It is loaded from Groups on first use, and kept up to date by the writes to Groups made through it
+ * after they are committed; like GroupFeedCache, it sees only the writes made in this JVM.
+ * Loading holds the lock while reading Groups, so a write committed during the load is applied after it.
+ */
+public class GroupMembers {
+
+    private final HashMap<Integer, RoaringBitmap> groups = new HashMap<>();
+    private boolean loaded = false;
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * input: a connection to the database holding Groups
+     */
+    public synchronized void load(Connection c) throws SQLException {
+        groups.clear();
+        try (PreparedStatement s = c.prepareStatement("SELECT groupId, studentId FROM Groups")) {
+            s.setFetchSize(10000);
+            ResultSet rs = s.executeQuery();
+            while (rs.next())
+                groups.computeIfAbsent(rs.getInt(1), id -> new RoaringBitmap()).add(rs.getInt(2));
+        }
+        loaded = true;
+    }
+
+    /**
+     * output: whether the student is a member of the group, or null if the members are not loaded
+     */
+    public synchronized Boolean isMember(int groupId, int studentId) {
+        if (!loaded)
+            return null;
+        RoaringBitmap members = groups.get(groupId);
+        return members != null && members.contains(studentId);
+    }
+
+    public synchronized void added(int groupId, int studentId) {
+        if (loaded)
+            groups.computeIfAbsent(groupId, id -> new RoaringBitmap()).add(studentId);
+    }
+
+    public synchronized void removed(int groupId, int studentId) {
+        RoaringBitmap members = groups.get(groupId);
+        if (members == null)
+            return;
+        members.remove(studentId);
+        if (members.isEmpty())
+            groups.remove(groupId);
+    }
+
+    /**
+     * Removes a deleted student from all groups.
+     */
+    public synchronized void removed(int studentId) {
+        groups.values().forEach(members -> members.remove(studentId));
+        groups.values().removeIf(RoaringBitmap::isEmpty);
+    }
+
+    /**
+     * input: whether Groups is known to be empty (after it was created or emptied), or must be loaded again
+     */
+    public synchronized void reset(boolean empty) {
+        groups.clear();
+        loaded = empty;
+    }
+}
@@ -0,0 +1,96 @@
+package techbook.data;
+
+/**
+ * A fixed number of HyperLogLog counters, each in its own array of 2^log2m byte registers, so they cost
+ * counters * 2^log2m bytes without any single array having to hold them all.
+ * The relative standard error of a single count is about 1.04 / sqrt(2^log2m).
+ * Different counters may be written concurrently, the same counter may not.
+ */
+public class HyperLogLogCounters {
+
+    public static final int MIN_LOG2M = 4;
+    public static final int MAX_LOG2M = 16;
+
+    private final int log2m;
+    private final int m;
+    private final double alphaMM;
+    private final byte[][] registers;
+
+    public HyperLogLogCounters(int counters, int log2m) {
+        if (log2m < MIN_LOG2M || log2m > MAX_LOG2M)
+            throw new IllegalArgumentException("log2m must be between " + MIN_LOG2M + " and " + MAX_LOG2M
+                    + ", got " + log2m);
+        this.log2m = log2m;
+        this.m = 1 << log2m;
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        this.alphaMM = alpha * m * m;
+        this.registers = new byte[counters][m];
+    }
+
+    public int size() {
+        return registers.length;
+    }
+
+    public int getLog2m() {
+        return log2m;
+    }
+
+    /*splitmix64 finalizer, spreads consecutive ids over all 64 bits*/
+    private static long hash(long x) {
+        x += 0x9E3779B97F4A7C15L;
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+
+    public void add(int counter, long item) {
+        long h = hash(item);
+        int j = (int) (h >>> (64 - log2m));
+        //the guard bit bounds the rank by 64 - log2m + 1
+        byte rank = (byte) (Long.numberOfLeadingZeros((h << log2m) | (1L << (log2m - 1))) + 1);
+        byte[] r = registers[counter];
+        if (r[j] < rank)
+            r[j] = rank;
+    }
+
+    /**
+     * Sets counter to the value of other in from.
+     */
+    public void copy(int counter, HyperLogLogCounters from, int other) {
+        System.arraycopy(from.registers[other], 0, registers[counter], 0, m);
+    }
+
+    /**
+     * Adds every item counted by other in from to counter.
+     * output: true iff counter changed
+     */
+    public boolean union(int counter, HyperLogLogCounters from, int other) {
+        boolean changed = false;
+        byte[] to = registers[counter];
+        byte[] source = from.registers[other];
+        for (int j = 0; j < m; j++) {
+            if (to[j] < source[j]) {
+                to[j] = source[j];
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    public double count(int counter) {
+        double sum = 0;
+        int zeros = 0;
+        byte[] registers = this.registers[counter];
+        for (int j = 0; j < m; j++) {
+            byte r = registers[j];
+            sum += 1.0 / (1L << r);
+            if (r == 0)
+                zeros++;
+        }
+        double estimate = alphaMM / sum;
+        //small range correction: linear counting is exact enough while most registers are empty
+        if (estimate <= 2.5 * m && zeros > 0)
+            return m * Math.log((double) m / zeros);
+        return estimate;
+    }
+}
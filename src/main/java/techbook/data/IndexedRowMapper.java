@@ -0,0 +1,90 @@
+package techbook.data;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps rows by column index instead of by column name.
+ * The columns the mapper needs are looked up once per result shape (the list of column labels),
+ * and the resulting RowMapper is cached for every later ResultSet with the same labels, so queries
+ * that return the same columns in different orders each get their own mapping.
+ */
+public class IndexedRowMapper<T> {
+
+    /**
+     * Builds a RowMapper that reads the requested columns from the given indexes,
+     * in the order the columns were passed to the IndexedRowMapper.
+     */
+    @FunctionalInterface
+    public interface Binding<T> {
+        RowMapper<T> bind(int[] indexes);
+    }
+
+    private static class Resolved<T> {
+        final int[] indexes;
+        final RowMapper<T> mapper;
+
+        Resolved(int[] indexes, RowMapper<T> mapper) {
+            this.indexes = indexes;
+            this.mapper = mapper;
+        }
+    }
+
+    private final String[] columns;
+    private final Binding<T> binding;
+    private final ConcurrentHashMap<String, Resolved<T>> byShape = new ConcurrentHashMap<>();
+
+    public IndexedRowMapper(Binding<T> binding, String... columns) {
+        this.binding = binding;
+        this.columns = new String[columns.length];
+        for (int i = 0; i < columns.length; i++)
+            this.columns[i] = columns[i].toLowerCase(Locale.ROOT);
+    }
+
+    private Resolved<T> resolve(ResultSet rs) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int count = metaData.getColumnCount();
+        String[] labels = new String[count];
+        StringBuilder shape = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            labels[i] = metaData.getColumnLabel(i + 1).toLowerCase(Locale.ROOT);
+            shape.append(labels[i]).append(',');
+        }
+        Resolved<T> resolved = byShape.get(shape.toString());
+        if (resolved != null)
+            return resolved;
+
+        int[] indexes = new int[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            //like ResultSet.findColumn, the first column with the label wins
+            for (int i = count - 1; i >= 0; i--)
+                if (labels[i].equals(columns[c]))
+                    indexes[c] = i + 1;
+            if (indexes[c] == 0)
+                throw new SQLException("The column name " + columns[c] + " was not found in this ResultSet.");
+        }
+        resolved = new Resolved<>(indexes, binding.bind(indexes));
+        byShape.putIfAbsent(shape.toString(), resolved);
+        return resolved;
+    }
+
+    /**
+     * input: a ResultSet that was just executed
+     * output: a RowMapper for its rows
+     */
+    public RowMapper<T> forResultSet(ResultSet rs) throws SQLException {
+        return resolve(rs).mapper;
+    }
+
+    /**
+     * input: a ResultSet that was just executed
+     * output: the index of each column of this mapper in the ResultSet, for callers that read the columns themselves.
+     * The array is shared and must not be modified
+     */
+    public int[] indexes(ResultSet rs) throws SQLException {
+        return resolve(rs).indexes;
+    }
+}
@@ -0,0 +1,88 @@
+package techbook.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The like counts of the posts, striped over PostLikes(postId, slot, likes): a like or unlike adds +1 or -1 to the
+ * slot of its student, so concurrent likes of a hot post lock different rows instead of waiting for one, and a
+ * count is the sum of the slots of its post. Only the sum is meaningful, a slot alone may even be negative.
+ * Slots hold at most one row each per post, but a post liked once by many students keeps a row per slot,
+ * so compact() periodically folds the slots of such posts into slot 0, and a count reads a single row again.
+ * The periodic compactions run on a background thread (see compactLater), never inside a like.
+ */
+public class LikeCounters {
+
+    private static final Executor COMPACTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "techbook-like-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong changes = new AtomicLong();
+    //a compaction is queued and has not started yet
+    private final AtomicBoolean queued = new AtomicBoolean();
+
+    /**
+     * output: the slot of the likes of a student, out of slots (a Fibonacci hash, so consecutive ids spread evenly)
+     */
+    public static int slot(int studentId, int slots) {
+        return slots <= 1 ? 0 : (int) (((studentId * 0x9E3779B9L) & 0xffffffffL) * slots >>> 32);
+    }
+
+    /**
+     * Counts a committed like or unlike.
+     * input: how many changes apart compactions are (0 never compacts)
+     * output: true iff it is time to compact
+     */
+    public boolean changed(long compactEvery) {
+        return compactEvery > 0 && changes.incrementAndGet() % compactEvery == 0;
+    }
+
+    /**
+     * Runs a compaction on the background thread, so the like that triggered it neither waits for it nor holds its
+     * own connection meanwhile. A compaction requested while another one is queued is dropped, one requested while
+     * another one runs is queued after it.
+     * input: the compaction, which opens and closes its own connection
+     */
+    public void compactLater(Runnable compaction) {
+        if (!queued.compareAndSet(false, true))
+            return;
+        COMPACTOR.execute(() -> {
+            queued.set(false);
+            compaction.run();
+        });
+    }
+
+    /**
+     * Folds the other slots of up to posts posts, those with the most slots, into their slot 0 in one statement,
+     * so no sum is ever seen changed.
+     * Likes made meanwhile wait for the slots they add to, which are locked until c commits.
+     * input: a connection to the database holding PostLikes, the most posts to fold
+     * output: the number of rows removed
+     */
+    public int compact(Connection c, int posts) throws SQLException {
+        try (PreparedStatement s = c.prepareStatement("WITH folded AS (\n" +
+                "\tDELETE FROM PostLikes\n" +
+                "\tWHERE slot <> 0 AND postId IN (\n" +
+                "\t\tSELECT postId FROM PostLikes WHERE slot <> 0\n" +
+                "\t\tGROUP BY postId ORDER BY COUNT(*) DESC LIMIT ?)\n" +
+                "\tRETURNING postId, likes\n" +
+                "), summed AS (\n" +
+                "\tINSERT INTO PostLikes(postId,slot,likes)\n" +
+                "\tSELECT postId, 0, SUM(likes) FROM folded GROUP BY postId\n" +
+                "\tON CONFLICT (postId,slot) DO UPDATE SET likes = PostLikes.likes + EXCLUDED.likes\n" +
+                ")\n" +
+                "SELECT COUNT(*) FROM folded")) {
+            s.setInt(1, posts);
+            ResultSet rs = s.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package techbook.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * The likes of each post per time bucket, in LikeBuckets(postId, groupId, bucket, likes), so the most liked posts
+ * of a recent window are summed from a few rows per post instead of counted from likes. A like adds 1 to the bucket
+ * of its likedAt, and removing it subtracts 1 from that same bucket, so a bucket always counts the likes made in it
+ * that still exist. The group of the post is kept in its rows, so the posts of a group are ranked from them alone.
+ * Buckets start at multiples of their width since the epoch; buckets older than the longest window asked for
+ * are only kept until prune() removes them.
+ */
+public class LikeRollups {
+
+    /**
+     * output: SQL of the start of the bucket of width bucketSeconds holding the timestamp of the SQL expression time
+     */
+    public static String bucket(String time, int bucketSeconds) {
+        return String.format("TIMESTAMP 'epoch' + floor(extract(epoch FROM %s) / %d) * %d * INTERVAL '1 second'",
+                time, bucketSeconds, bucketSeconds);
+    }
+
+    /**
+     * output: SQL adding delta to the buckets of the likes of a query with postId, groupId and likedAt columns,
+     * at most one like of each post
+     */
+    public static String add(String likes, int delta, int bucketSeconds) {
+        return "INSERT INTO LikeBuckets(postId,groupId,bucket,likes)\n" +
+                String.format("SELECT postId, groupId, %s, %d FROM %s\n", bucket("likedAt", bucketSeconds), delta, likes) +
+                "ON CONFLICT (postId,bucket) DO UPDATE SET likes = LikeBuckets.likes + EXCLUDED.likes\n";
+    }
+
+    /**
+     * Removes the buckets that started more than retainedSeconds ago, and those left empty by unlikes.
+     * input: a connection to the database holding LikeBuckets, how long buckets are kept
+     * output: the number of rows removed
+     */
+    public static int prune(Connection c, long retainedSeconds) throws SQLException {
+        try (PreparedStatement s = c.prepareStatement("DELETE FROM LikeBuckets\n" +
+                "WHERE bucket < LOCALTIMESTAMP - ? * INTERVAL '1 second' OR likes = 0")) {
+            s.setLong(1, retainedSeconds);
+            return s.executeUpdate();
+        }
+    }
+}
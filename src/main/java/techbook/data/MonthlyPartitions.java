@@ -0,0 +1,150 @@
+package techbook.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps tables that are range-partitioned by month supplied with partitions: the partitions of a month are created
+ * together in all the tables when the first row of that month arrives, named <table>_<yyyy>_<mm>.
+ * Months older than the retained ones are detached from the tables by detachBefore, run as maintenance, and renamed
+ * to <table>_<yyyy>_<mm>_archived, so queries, indexes and vacuum no longer touch them while their rows stay available.
+ * The months known to exist are remembered, so only the first row of a month pays for the DDL.
+ */
+public class MonthlyPartitions {
+
+    private static final String DUPLICATE_TABLE = "42P07";
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    private final List<String> tables;
+    private final Set<YearMonth> created = ConcurrentHashMap.newKeySet();
+
+    /**
+     * input: the tables partitioned by month, in the order their partitions are created
+     * (a table referencing another by foreign key comes after it)
+     */
+    public MonthlyPartitions(String... tables) {
+        this.tables = Arrays.asList(tables);
+    }
+
+    private static String name(String table, YearMonth month) {
+        return String.format("%s_%04d_%02d", table, month.getYear(), month.getMonthValue());
+    }
+
+    /**
+     * output: the month of a partition name of table, or null if it is not one
+     */
+    private static YearMonth month(String table, String partition) {
+        String prefix = table.toLowerCase() + "_";
+        if (!partition.startsWith(prefix) || partition.length() != prefix.length() + 7)
+            return null;
+        try {
+            return YearMonth.of(Integer.parseInt(partition.substring(prefix.length(), prefix.length() + 4)),
+                    Integer.parseInt(partition.substring(prefix.length() + 5)));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * output: the oldest month kept attached when retainedMonths months are kept, counting the current one,
+     * or null if all months are kept (retainedMonths <= 0)
+     */
+    public static YearMonth oldestRetained(int retainedMonths) {
+        return retainedMonths <= 0 ? null : YearMonth.now().minusMonths(retainedMonths - 1);
+    }
+
+    public boolean isCreated(LocalDateTime date) {
+        return created.contains(YearMonth.from(date));
+    }
+
+    /**
+     * Creates the partitions of the month of date in all the tables, unless they are known to exist.
+     * Calls racing to create a month, in this process or another, all succeed.
+     * input: connections to the databases holding the tables, a date
+     * output: true iff the partitions were created by this call
+     */
+    public boolean ensure(List<Connection> databases, LocalDateTime date) throws SQLException {
+        YearMonth month = YearMonth.from(date);
+        if (created.contains(month))
+            return false;
+        synchronized (this) {
+            if (created.contains(month))
+                return false;
+            for (Connection c : databases) {
+                for (String table : tables) {
+                    try (PreparedStatement s = c.prepareStatement(String.format(
+                            "CREATE TABLE IF NOT EXISTS %s PARTITION OF %s FOR VALUES FROM ('%s') TO ('%s')",
+                            name(table, month), table,
+                            month.atDay(1).atStartOfDay(), month.plusMonths(1).atDay(1).atStartOfDay()))) {
+                        s.execute();
+                    } catch (SQLException e) {
+                        //IF NOT EXISTS does not cover a partition created by another process at the same moment
+                        if (!DUPLICATE_TABLE.equals(e.getSQLState()) && !UNIQUE_VIOLATION.equals(e.getSQLState()))
+                            throw e;
+                    }
+                }
+            }
+            return created.add(month);
+        }
+    }
+
+    /**
+     * Detaches and archives the partitions of the months before oldest, in the reverse order of the tables,
+     * so no partition is detached while the partition of another table still references it.
+     * Partitions are detached CONCURRENTLY, so reads and writes of the tables go on meanwhile; this needs a
+     * connection outside a transaction, and should run from maintenance rather than from a request.
+     * A detach that was interrupted is finished first.
+     * input: a connection in autocommit to a database holding the tables, the oldest month to keep
+     * output: the archived partitions, each as {table, archived partition}
+     */
+    public List<String[]> detachBefore(Connection c, YearMonth oldest) throws SQLException {
+        List<String[]> detached = new ArrayList<>();
+        for (int i = tables.size() - 1; i >= 0; i--) {
+            String table = tables.get(i);
+            List<String> old = new ArrayList<>();
+            List<Boolean> pending = new ArrayList<>();
+            try (PreparedStatement s = c.prepareStatement("SELECT pg_class.relname, pg_inherits.inhdetachpending\n" +
+                    "FROM pg_inherits JOIN pg_class ON pg_class.oid = pg_inherits.inhrelid\n" +
+                    "WHERE pg_inherits.inhparent = ?::regclass")) {
+                s.setString(1, table);
+                ResultSet rs = s.executeQuery();
+                while (rs.next()) {
+                    YearMonth month = month(table, rs.getString(1));
+                    if (month != null && month.isBefore(oldest)) {
+                        old.add(rs.getString(1));
+                        pending.add(rs.getBoolean(2));
+                    }
+                }
+            }
+            for (int j = 0; j < old.size(); j++) {
+                String partition = old.get(j);
+                try (PreparedStatement detach = c.prepareStatement(String.format("ALTER TABLE %s DETACH PARTITION %s %s",
+                        table, partition, pending.get(j) ? "FINALIZE" : "CONCURRENTLY"));
+                     PreparedStatement archive = c.prepareStatement(
+                             String.format("ALTER TABLE %s RENAME TO %s_archived", partition, partition))) {
+                    detach.execute();
+                    archive.execute();
+                }
+                detached.add(new String[]{table, partition + "_archived"});
+            }
+        }
+        created.removeIf(month -> month.isBefore(oldest));
+        return detached;
+    }
+
+    /**
+     * Forgets the months known to exist, after the tables were dropped or created.
+     */
+    public void reset() {
+        created.clear();
+    }
+}
@@ -0,0 +1,159 @@
+package techbook.data;
+
+import java.util.Arrays;
+
+/**
+ * A compressed set of ints, after Roaring bitmaps: the ints are split by their high 16 bits into chunks of
+ * up to 65536 values, and each chunk is stored in the smaller of two containers, a sorted array of its low
+ * 16 bits while it has at most 4096 values (2 bytes per value), and a 65536 bit bitmap above that (8KB).
+ * Chunks are found by binary search over their sorted keys, so contains costs two binary searches at most.
+ * Not thread safe.
+ */
+public class RoaringBitmap {
+
+    private static final int ARRAY_LIMIT = 4096;
+
+    private abstract static class Container {
+        abstract boolean contains(char low);
+
+        /**
+         * output: the container holding the values after the change, this one or a new one
+         */
+        abstract Container add(char low);
+
+        abstract Container remove(char low);
+
+        abstract int cardinality();
+    }
+
+    private static final class ArrayContainer extends Container {
+        char[] values = new char[4];
+        int size = 0;
+
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, size, low) >= 0;
+        }
+
+        Container add(char low) {
+            int i = Arrays.binarySearch(values, 0, size, low);
+            if (i >= 0)
+                return this;
+            if (size == ARRAY_LIMIT) {
+                BitmapContainer bitmap = new BitmapContainer();
+                for (int j = 0; j < size; j++)
+                    bitmap.add(values[j]);
+                return bitmap.add(low);
+            }
+            i = -i - 1;
+            if (size == values.length)
+                values = Arrays.copyOf(values, Math.min(size * 2, ARRAY_LIMIT));
+            System.arraycopy(values, i, values, i + 1, size - i);
+            values[i] = low;
+            size++;
+            return this;
+        }
+
+        Container remove(char low) {
+            int i = Arrays.binarySearch(values, 0, size, low);
+            if (i >= 0) {
+                System.arraycopy(values, i + 1, values, i, size - i - 1);
+                size--;
+            }
+            return this;
+        }
+
+        int cardinality() {
+            return size;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        final long[] words = new long[1 << 10];
+        int cardinality = 0;
+
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        Container add(char low) {
+            if (!contains(low)) {
+                words[low >>> 6] |= 1L << low;
+                cardinality++;
+            }
+            return this;
+        }
+
+        Container remove(char low) {
+            if (!contains(low))
+                return this;
+            words[low >>> 6] &= ~(1L << low);
+            cardinality--;
+            if (cardinality > ARRAY_LIMIT)
+                return this;
+            ArrayContainer array = new ArrayContainer();
+            array.values = new char[ARRAY_LIMIT];
+            for (int i = 0; i < words.length; i++)
+                for (long w = words[i]; w != 0; w &= w - 1)
+                    array.values[array.size++] = (char) (i * 64 + Long.numberOfTrailingZeros(w));
+            return array;
+        }
+
+        int cardinality() {
+            return cardinality;
+        }
+    }
+
+    private char[] keys = new char[0];
+    private Container[] containers = new Container[0];
+    private int size = 0;
+
+    private int find(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    public boolean contains(int value) {
+        int i = find((char) (value >>> 16));
+        return i >= 0 && containers[i].contains((char) value);
+    }
+
+    public void add(int value) {
+        char key = (char) (value >>> 16);
+        int i = find(key);
+        if (i < 0) {
+            i = -i - 1;
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(size * 2, 1));
+                containers = Arrays.copyOf(containers, keys.length);
+            }
+            System.arraycopy(keys, i, keys, i + 1, size - i);
+            System.arraycopy(containers, i, containers, i + 1, size - i);
+            keys[i] = key;
+            containers[i] = new ArrayContainer();
+            size++;
+        }
+        containers[i] = containers[i].add((char) value);
+    }
+
+    public void remove(int value) {
+        int i = find((char) (value >>> 16));
+        if (i < 0)
+            return;
+        containers[i] = containers[i].remove((char) value);
+        if (containers[i].cardinality() == 0) {
+            System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+            System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+            containers[--size] = null;
+        }
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++)
+            cardinality += containers[i].cardinality();
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -0,0 +1,105 @@
+package techbook.data;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Merges per-author timelines, each already sorted in feed order, into the first posts of one feed.
+ * Every author starts with a small chunk of its timeline, loaded for all authors at once; a priority queue
+ * holds the head of each timeline, and an author's next chunk is loaded only when the merge runs through
+ * its current one. The next chunk starts after the last item of the current one, not at an offset, so the items
+ * read are about limit + authors * chunkSize, whatever the authors' history.
+ */
+public class TimelineMerger<T> {
+
+    @FunctionalInterface
+    public interface Loader<T> {
+        /**
+         * input: authors, the last item loaded of their timelines (null to start at the newest),
+         * number of items to return per author
+         * output: for every author that has items left, its next items in feed order: at least count of them unless
+         * the timeline ends there, and more when the order of the items past count may still change
+         */
+        Map<Integer, List<T>> load(int[] authors, T after, int count) throws SQLException;
+    }
+
+    private final class Timeline {
+        final int author;
+        List<T> chunk;
+        int position = 0;
+        int nextChunk;
+
+        Timeline(int author, List<T> chunk, int chunkSize) {
+            this.author = author;
+            this.chunk = chunk;
+            //a short first chunk is the whole timeline
+            this.nextChunk = chunk.size() < chunkSize ? 0 : chunkSize * 2;
+        }
+
+        T head() {
+            return chunk.get(position);
+        }
+
+        /**
+         * output: false iff the timeline is exhausted
+         */
+        boolean advance(int remaining) throws SQLException {
+            if (++position < chunk.size())
+                return true;
+            if (nextChunk == 0 || remaining == 0)
+                return false;
+            int count = Math.min(nextChunk, remaining);
+            T last = chunk.get(chunk.size() - 1);
+            chunk = loader.load(new int[]{author}, last, count).getOrDefault(author, Collections.emptyList());
+            position = 0;
+            nextChunk = chunk.size() < count ? 0 : nextChunk * 2;
+            return !chunk.isEmpty();
+        }
+    }
+
+    private final Comparator<? super T> order;
+    private final Loader<T> loader;
+    private final int chunkSize;
+
+    /**
+     * input: the feed order, which every timeline is sorted by, how to load the timelines,
+     * and the number of items first loaded per author (later chunks of an author double in size)
+     */
+    public TimelineMerger(Comparator<? super T> order, Loader<T> loader, int chunkSize) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("chunkSize must be positive, got " + chunkSize);
+        this.order = order;
+        this.loader = loader;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * input: the authors whose timelines to merge, maximal number of items
+     * output: the first limit items of the merged timelines, in feed order
+     */
+    public List<T> merge(int[] authors, int limit) throws SQLException {
+        List<T> result = new ArrayList<>(Math.max(limit, 0));
+        if (limit <= 0 || authors.length == 0)
+            return result;
+        int first = Math.min(chunkSize, limit);
+        Map<Integer, List<T>> chunks = loader.load(authors, null, first);
+        PriorityQueue<Timeline> heads = new PriorityQueue<>(Math.max(chunks.size(), 1),
+                (a, b) -> order.compare(a.head(), b.head()));
+        for (Map.Entry<Integer, List<T>> chunk : chunks.entrySet())
+            if (!chunk.getValue().isEmpty())
+                heads.add(new Timeline(chunk.getKey(), chunk.getValue(), first));
+
+        while (result.size() < limit && !heads.isEmpty()) {
+            Timeline timeline = heads.poll();
+            result.add(timeline.head());
+            if (timeline.advance(limit - result.size()))
+                heads.add(timeline);
+        }
+        return result;
+    }
+}
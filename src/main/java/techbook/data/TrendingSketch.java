@@ -0,0 +1,226 @@
+package techbook.data;
+
+import techbook.business.TrendingPost;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.function.LongSupplier;
+
+/**
+ * The most liked posts of a sliding window, kept in memory from the likes and unlikes as they happen, without
+ * a count per post: a Count-Min sketch of the likes of each pane (a window is panes panes), and the posts with the
+ * highest estimates as candidates for the top. The window always sums its panes, so an estimate reads d counters.
+ * <p>
+ * Error bounds: with width w = e / epsilon (rounded up to a power of two) and depth d = ln(1 / delta), an estimate
+ * is never below the likes of the post in the window, and exceeds them by more than epsilon * N with probability
+ * at most delta, where N is the number of likes in the window. This holds while no counter is decremented below what
+ * it was added. The sketch keeps no record of single likes, so an unlike is taken off the newest pane in which its
+ * post has a positive estimate, and ignored when there is none in the window; no counter goes below zero. When the
+ * sketch did not count the like (it was made before the sketch started, or by another process), or counted it in
+ * another pane, the unlike may instead take a like of a post sharing those counters: an estimate may then be below
+ * the likes of its post by at most the unlikes of such uncounted likes among the posts sharing its counters, and an
+ * unliked post may stay counted until its like leaves the window. Likes are placed by the clock of the sketch when
+ * they are counted, never by a time from the database, and likes made by other processes are not seen at all.
+ * Memory is fixed by the bounds and the panes: panes * d * w ints and d * w longs, and at most capacity candidates.
+ * The window holds the current pane and the panes - 1 before it, so it spans between (panes - 1) / panes of the
+ * window and all of it. A post becomes a candidate on a like that raises its estimate above the weakest candidate's,
+ * so a hot post is a candidate from its first like after it got hot, and stays one while it is among the top.
+ * Thread safe: every call holds the lock of the sketch.
+ */
+public class TrendingSketch {
+
+    //a candidate costs an entry of estimates and of candidates, with its boxed id and estimate
+    public static final int CANDIDATE_BYTES = 112;
+
+    private final int depth;
+    private final int mask;
+    private final long paneMillis;
+    //[pane][row][column]: the likes of the pane, the pane of time t at (t / paneMillis) % panes
+    private final int[][][] panes;
+    //[row][column]: the sum of the panes
+    private final long[][] window;
+    private final int capacity;
+    private final LongSupplier clock;
+    private long newest;
+
+    private final HashMap<Integer, Long> estimates = new HashMap<>();
+    //weakest first: lowest estimate, then highest id
+    private final TreeSet<Integer> candidates = new TreeSet<>(
+            Comparator.comparing((Integer id) -> estimates.get(id)).thenComparing(Comparator.reverseOrder()));
+
+    /**
+     * input: the length of the window and the number of panes it slides by, the error bounds (see above),
+     * the number of candidates kept for the top, and the clock in milliseconds
+     */
+    public TrendingSketch(long windowMillis, int panes, double epsilon, double delta, int capacity, LongSupplier clock) {
+        int columns = (int) Math.min(Math.ceil(Math.E / epsilon), 1 << 24);
+        int width = columns <= 1 ? 1 : Integer.highestOneBit(columns - 1) << 1;
+        this.depth = Math.max(1, (int) Math.ceil(Math.log(1 / delta)));
+        this.mask = width - 1;
+        this.paneMillis = Math.max(1, (windowMillis + panes - 1) / panes);
+        this.panes = new int[panes][depth][width];
+        this.window = new long[depth][width];
+        this.capacity = capacity;
+        this.clock = clock;
+        this.newest = clock.getAsLong() / paneMillis;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private int column(long h1, long h2, int row) {
+        return (int) ((h1 + row * h2) >>> 33) & mask;
+    }
+
+    /*moves the window to now, dropping the panes that left it, and the candidates with them*/
+    private void advance(long now) {
+        long current = now / paneMillis;
+        if (current <= newest)
+            return;
+        for (long pane = Math.max(newest + 1, current - panes.length + 1); pane <= current; pane++) {
+            int[][] expired = panes[(int) (pane % panes.length)];
+            for (int row = 0; row < depth; row++) {
+                for (int column = 0; column <= mask; column++)
+                    window[row][column] -= expired[row][column];
+                Arrays.fill(expired[row], 0);
+            }
+        }
+        newest = current;
+        ArrayList<Integer> kept = new ArrayList<>(candidates);
+        candidates.clear();
+        for (Integer postId : kept) {
+            long estimate = estimate(postId);
+            if (estimate > 0) {
+                estimates.put(postId, estimate);
+                candidates.add(postId);
+            } else {
+                estimates.remove(postId);
+            }
+        }
+    }
+
+    private long estimate(int postId) {
+        long h1 = mix(postId);
+        long h2 = mix(h1) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++)
+            estimate = Math.min(estimate, window[row][column(h1, h2, row)]);
+        return Math.max(estimate, 0);
+    }
+
+    /**
+     * output: the estimated likes of a post in the window
+     */
+    public synchronized long getLikes(int postId) {
+        advance(clock.getAsLong());
+        return estimate(postId);
+    }
+
+    /**
+     * Counts a like of a post in the current pane.
+     */
+    public synchronized void liked(int postId) {
+        advance(clock.getAsLong());
+        add((int) (newest % panes.length), postId, 1);
+    }
+
+    /**
+     * Counts an unlike of a post in the newest pane where the post has a positive estimate, if any (see above).
+     */
+    public synchronized void unliked(int postId) {
+        advance(clock.getAsLong());
+        long h1 = mix(postId);
+        long h2 = mix(h1) | 1;
+        for (long pane = newest; pane > newest - panes.length && pane >= 0; pane--) {
+            int[][] counts = panes[(int) (pane % panes.length)];
+            boolean positive = true;
+            for (int row = 0; row < depth && positive; row++)
+                positive = counts[row][column(h1, h2, row)] > 0;
+            if (positive) {
+                add((int) (pane % panes.length), postId, -1);
+                return;
+            }
+        }
+    }
+
+    /**
+     * output: about the bytes the sketch holds, its counters and its candidates
+     */
+    public synchronized long memoryBytes() {
+        long counters = (long) depth * (mask + 1);
+        return counters * panes.length * Integer.BYTES + counters * Long.BYTES + estimates.size() * CANDIDATE_BYTES;
+    }
+
+    private void add(int pane, int postId, int delta) {
+        int[][] counts = panes[pane];
+        long h1 = mix(postId);
+        long h2 = mix(h1) | 1;
+        for (int row = 0; row < depth; row++) {
+            int column = column(h1, h2, row);
+            counts[row][column] += delta;
+            window[row][column] += delta;
+        }
+
+        long estimate = estimate(postId);
+        //the set orders by estimates, so a candidate leaves it before its estimate changes
+        boolean candidate = estimates.containsKey(postId) && candidates.remove(postId);
+        if (!candidate && (estimate <= 0 || (candidates.size() >= capacity
+                && estimate <= estimates.get(candidates.first()))))
+            return;
+        if (estimate <= 0) {
+            estimates.remove(postId);
+            return;
+        }
+        estimates.put(postId, estimate);
+        candidates.add(postId);
+        if (candidates.size() > capacity)
+            estimates.remove(candidates.pollFirst());
+    }
+
+    /**
+     * Forgets a deleted post, until it is liked again.
+     */
+    public synchronized void removed(int postId) {
+        if (estimates.containsKey(postId)) {
+            candidates.remove(postId);
+            estimates.remove(postId);
+        }
+    }
+
+    /**
+     * output: the k candidates with the most estimated likes in the window, by likes descending and then id
+     */
+    public synchronized ArrayList<TrendingPost> top(int k) {
+        advance(clock.getAsLong());
+        ArrayList<TrendingPost> top = new ArrayList<>();
+        Iterator<Integer> it = candidates.descendingIterator();
+        while (it.hasNext() && top.size() < k) {
+            TrendingPost post = new TrendingPost();
+            post.setPostId(it.next());
+            post.setLikes(estimates.get(post.getPostId()));
+            top.add(post);
+        }
+        return top;
+    }
+
+    /**
+     * Empties the sketch, which counts from now on.
+     */
+    public synchronized void reset() {
+        for (int[][] pane : panes)
+            for (int[] row : pane)
+                Arrays.fill(row, 0);
+        for (long[] row : window)
+            Arrays.fill(row, 0);
+        candidates.clear();
+        estimates.clear();
+        newest = clock.getAsLong() / paneMillis;
+    }
+}
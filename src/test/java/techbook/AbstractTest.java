@@ -3,9 +3,30 @@ package techbook;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import techbook.business.Post;
+import techbook.business.Student;
+
+import java.time.LocalDateTime;
 
 public abstract class AbstractTest {
 
+    protected static Student buildStudent(int id, String faculty) {
+        Student student = new Student();
+        student.setId(id);
+        student.setName(String.valueOf(id));
+        student.setFaculty(faculty);
+        return student;
+    }
+
+    protected static Post buildPost(int id, int author, String text, LocalDateTime date) {
+        Post post = new Post();
+        post.setId(id);
+        post.setAuthor(author);
+        post.setText(text);
+        post.setDate(date);
+        return post;
+    }
+
     @BeforeClass
     public static void createTables()
     {
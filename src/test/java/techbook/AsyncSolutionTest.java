@@ -0,0 +1,116 @@
+package techbook;
+
+import org.junit.Test;
+import techbook.business.ReturnValue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static techbook.business.ReturnValue.*;
+
+public class AsyncSolutionTest extends AbstractTest {
+
+    @Test
+    public void asyncTest() throws ExecutionException, InterruptedException {
+        AsyncSolution async = AsyncSolution.getDefault();
+        List<CompletableFuture<ReturnValue>> added = new ArrayList<>();
+        for (int i = 1; i <= 10; i++)
+            added.add(async.addStudent(buildStudent(i, "CS")));
+        for (CompletableFuture<ReturnValue> f : added)
+            assertEquals(OK, f.get());
+
+        ReturnValue friends = async.makeAsFriends(1, 2)
+                .thenCompose(r -> async.makeAsFriends(2, 1))
+                .get();
+        assertEquals(ALREADY_EXISTS, friends);
+        assertEquals(1, async.getStudentsWithinDistance(1, 1).get().size());
+        assertEquals("CS", async.getStudentProfile(3).get().getFaculty());
+
+        //of posts with one id added at once, by authors that may be on different shards, exactly one is added
+        LocalDateTime date = LocalDateTime.of(2018, 1, 1, 12, 0);
+        List<CompletableFuture<ReturnValue>> posts = new ArrayList<>();
+        for (int i = 1; i <= 10; i++)
+            posts.add(async.addPost(buildPost(1, i, "post 1", date), null));
+        int ok = 0;
+        for (CompletableFuture<ReturnValue> f : posts) {
+            if (f.get() == OK)
+                ok++;
+            else
+                assertEquals(ALREADY_EXISTS, f.get());
+        }
+        assertEquals(1, ok);
+        //a deleted post frees its id
+        assertEquals(OK, async.deletePost(1).get());
+        assertEquals(OK, async.addPost(buildPost(1, 2, "post 1", date), null).get());
+    }
+
+    @Test
+    public void backPressureTest() throws ExecutionException, InterruptedException {
+        //an executor that only runs its tasks when asked to
+        List<Runnable> pending = new ArrayList<>();
+        AsyncSolution async = new AsyncSolution(pending::add, 2, 0);
+        CompletableFuture<Integer> first = async.submit(() -> 1);
+        CompletableFuture<Integer> second = async.submit(() -> 2);
+        CompletableFuture<Integer> rejected = async.submit(() -> 3);
+        assertEquals(0, async.availableSlots());
+        try {
+            rejected.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+
+        pending.remove(0).run();
+        assertEquals(1, (int) first.get());
+        CompletableFuture<Integer> third = async.submit(() -> {
+            throw new IllegalStateException();
+        });
+        pending.forEach(Runnable::run);
+        assertEquals(2, (int) second.get());
+        assertTrue(third.isCompletedExceptionally());
+        assertEquals(2, async.availableSlots());
+    }
+
+    @Test
+    public void queuedCallsTest() throws ExecutionException, InterruptedException {
+        List<Runnable> pending = new ArrayList<>();
+        AsyncSolution async = new AsyncSolution(pending::add, 1, 300);
+        CompletableFuture<Integer> first = async.submit(() -> 1);
+        //a call waiting for a slot returns its future at once
+        long start = System.nanoTime();
+        CompletableFuture<Integer> second = async.submit(() -> 2);
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+        assertFalse(second.isDone());
+        assertEquals(1, pending.size());
+
+        //the slot of the first call goes to the second
+        pending.remove(0).run();
+        assertEquals(1, (int) first.get());
+        assertEquals(0, async.availableSlots());
+        pending.remove(0).run();
+        assertEquals(2, (int) second.get());
+        assertEquals(1, async.availableSlots());
+
+        //a call that waits longer than waitMillis is rejected, and never runs
+        async.submit(() -> 3);
+        CompletableFuture<Integer> rejected = async.submit(() -> 4);
+        try {
+            rejected.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        pending.remove(0).run();
+        assertTrue(pending.isEmpty());
+        assertEquals(1, async.availableSlots());
+    }
+}
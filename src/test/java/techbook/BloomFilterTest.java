@@ -0,0 +1,89 @@
+package techbook;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import techbook.business.Post;
+import techbook.data.BloomFilter;
+import techbook.data.DBConnector;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static techbook.business.ReturnValue.*;
+
+public class BloomFilterTest extends AbstractTest {
+
+    @Before
+    public void enable() {
+        System.setProperty("existence.bloomFilters", "true");
+    }
+
+    @After
+    public void disable() {
+        System.clearProperty("existence.bloomFilters");
+    }
+
+    @Test
+    public void falsePositivesTest() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++)
+            filter.put(i * 7L);
+        for (int i = 0; i < 10000; i++)
+            assertTrue(filter.mightContain(i * 7L));
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++)
+            if (filter.mightContain(i * 7L + 3))
+                falsePositives++;
+        assertTrue(falsePositives + " false positives", falsePositives < 2000);
+    }
+
+    @Test
+    public void withoutQueriesTest() throws SQLException {
+        for (int i = 1; i <= 3; i++) {
+            assertEquals(OK, Solution.addStudent(buildStudent(i, "CS")));
+        }
+        assertEquals(OK, Solution.addPost(buildPost(1, 1, "post", LocalDateTime.of(2018, 1, 1, 12, 0)), null));
+        assertEquals(OK, Solution.makeAsFriends(1, 2));
+        assertEquals(OK, Solution.likePost(2, 1));
+
+        //with a closed connection any query fails, so these answers come from the filters alone
+        Connection closed = DBConnector.getConnection();
+        closed.close();
+        Connection previous = DBConnector.pinConnection(closed);
+        try {
+            assertEquals(NOT_EXISTS, Solution.likePost(4, 1));
+            assertEquals(NOT_EXISTS, Solution.likePost(2, 2));
+            assertEquals(NOT_EXISTS, Solution.unlikePost(2, 2));
+            assertEquals(NOT_EXISTS, Solution.makeAsFriends(1, 4));
+            assertEquals(NOT_EXISTS, Solution.makeAsNotFriends(1, 3));
+            assertEquals(Post.badPost(), Solution.getPost(2));
+            assertEquals(ERROR, Solution.likePost(3, 1));
+        } finally {
+            DBConnector.pinConnection(previous);
+        }
+
+        //deleted rows are still "maybe", and answered by the database
+        assertEquals(OK, Solution.makeAsNotFriends(1, 2));
+        assertEquals(NOT_EXISTS, Solution.makeAsNotFriends(1, 2));
+        assertEquals(OK, Solution.deletePost(1));
+        assertEquals(NOT_EXISTS, Solution.likePost(3, 1));
+        assertEquals(Post.badPost(), Solution.getPost(1));
+    }
+
+    @Test
+    public void failedCreateTablesTest() {
+        assertEquals(OK, Solution.addStudent(buildStudent(1, "CS")));
+        assertEquals(OK, Solution.addStudent(buildStudent(2, "CS")));
+        assertEquals(OK, Solution.addPost(buildPost(1, 1, "post", LocalDateTime.of(2018, 1, 1, 12, 0)), null));
+
+        //creating the tables again fails, and leaves the filters to be built from the tables
+        Solution.createTables();
+        assertEquals(Integer.valueOf(1), Solution.getPost(1).getId());
+        assertEquals(OK, Solution.makeAsFriends(1, 2));
+        assertEquals(OK, Solution.likePost(2, 1));
+    }
+}
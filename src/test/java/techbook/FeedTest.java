@@ -0,0 +1,276 @@
+package techbook;
+
+import org.junit.Test;
+import techbook.business.ColumnarFeed;
+import techbook.business.Feed;
+import techbook.business.Post;
+import techbook.business.PostView;
+import techbook.data.GroupFeedCache;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FeedTest extends AbstractTest {
+
+    private static final int FRIENDS = 5;
+    private static final int POSTS_PER_STUDENT = 4;
+
+    //student 1 is friends with 2..FRIENDS+1, each of them posts publicly and in CS, a few minutes apart
+    private void buildFeeds() {
+        LocalDateTime start = LocalDateTime.of(2018, 1, 1, 12, 0);
+        Solution.addStudent(buildStudent(1, "CS"));
+        int postId = 1;
+        for (int i = 2; i <= FRIENDS + 1; i++) {
+            Solution.addStudent(buildStudent(i, "CS"));
+            Solution.makeAsFriends(1, i);
+            for (int j = 0; j < POSTS_PER_STUDENT; j++) {
+                //every other post shares its date with a post of the previous student, so likes break the tie
+                LocalDateTime date = start.plusMinutes(i + j * 2);
+                Solution.addPost(buildPost(postId++, i, "public " + j, date), null);
+                Solution.addPost(buildPost(postId++, i, "group " + j, date), "CS");
+            }
+        }
+        for (int p = 1; p < postId; p += 3)
+            for (int i = 1; i <= (p % 4) + 1; i++)
+                Solution.likePost(i, p);
+    }
+
+    @Test
+    public void streamFeedTest() {
+        System.setProperty("feed.fetchSize", "3");
+        try {
+            buildFeeds();
+            Feed studentFeed = Solution.getStudentFeed(1);
+            assertEquals(FRIENDS * POSTS_PER_STUDENT, studentFeed.size());
+            try (Stream<Post> stream = Solution.streamStudentFeed(1)) {
+                assertEquals(studentFeed, stream.collect(Collectors.toList()));
+            }
+
+            Feed groupFeed = Solution.getGroupFeed("CS");
+            assertEquals(FRIENDS * POSTS_PER_STUDENT, groupFeed.size());
+            try (Stream<Post> stream = Solution.streamGroupFeed("CS")) {
+                assertEquals(groupFeed, stream.collect(Collectors.toList()));
+            }
+
+            //stopping early closes the cursor with the stream
+            for (int i = 0; i < 20; i++) {
+                try (Stream<Post> stream = Solution.streamGroupFeed("CS")) {
+                    List<Post> first = stream.limit(4).collect(Collectors.toList());
+                    assertEquals(groupFeed.subList(0, 4), first);
+                }
+            }
+            try (Stream<Post> stream = Solution.streamGroupFeed("no such group")) {
+                assertEquals(0, stream.count());
+            }
+        } finally {
+            System.clearProperty("feed.fetchSize");
+        }
+    }
+
+    @Test
+    public void topFeedTest() {
+        buildFeeds();
+        Feed studentFeed = Solution.getStudentFeed(1);
+        Feed groupFeed = Solution.getGroupFeed("CS");
+        //small chunks make the merge load every friend's timeline several times
+        for (String chunkSize : new String[]{"1", "3", "100"}) {
+            System.setProperty("feed.chunkSize", chunkSize);
+            try {
+                for (int n = 0; n <= studentFeed.size() + 1; n++)
+                    assertEquals(studentFeed.subList(0, Math.min(n, studentFeed.size())),
+                            Solution.getStudentFeed(1, n));
+            } finally {
+                System.clearProperty("feed.chunkSize");
+            }
+        }
+        //posts of one author at one date are read in one chunk, so likes keep ordering them across chunks
+        LocalDateTime date = LocalDateTime.of(2019, 1, 1, 12, 0);
+        for (int id = 100; id < 103; id++)
+            Solution.addPost(buildPost(id, 2, "same date", date), null);
+        Solution.likePost(1, 102);
+        Solution.likePost(3, 102);
+        Solution.likePost(1, 101);
+        System.setProperty("feed.chunkSize", "1");
+        try {
+            Feed newest = Solution.getStudentFeed(1, 4);
+            assertEquals(Solution.getStudentFeed(1).subList(0, 4), newest);
+            assertEquals(Integer.valueOf(102), newest.get(0).getId());
+            assertEquals(Integer.valueOf(100), newest.get(2).getId());
+        } finally {
+            System.clearProperty("feed.chunkSize");
+        }
+        for (int n = 0; n <= groupFeed.size() + 1; n++)
+            assertEquals(groupFeed.subList(0, Math.min(n, groupFeed.size())), Solution.getGroupFeed("CS", n));
+        assertEquals(0, Solution.getStudentFeed(FRIENDS + 2, 5).size());
+        assertEquals(0, Solution.getGroupFeed("no such group", 5).size());
+    }
+
+    private static void assertCachedGroupFeed(String groupName) {
+        //the streamed feed always reads the database
+        Feed stored = new Feed();
+        try (Stream<Post> posts = Solution.streamGroupFeed(groupName)) {
+            posts.forEach(stored::add);
+        }
+        assertEquals(stored, Solution.getGroupFeed(groupName));
+        for (int n = 1; n <= stored.size() + 1; n++)
+            assertEquals(stored.subList(0, Math.min(n, stored.size())), Solution.getGroupFeed(groupName, n));
+    }
+
+    @Test
+    public void groupFeedCacheTest() {
+        buildFeeds();
+        assertCachedGroupFeed("CS");
+
+        LocalDateTime last = LocalDateTime.of(2018, 1, 1, 12, FRIENDS + 1 + (POSTS_PER_STUDENT - 1) * 2);
+        Solution.addPost(buildPost(100, 2, "newest", last.plusMinutes(1)), "CS");
+        Solution.addPost(buildPost(101, 3, "tied", last), "CS");
+        assertCachedGroupFeed("CS");
+        assertEquals(Integer.valueOf(100), Solution.getGroupFeed("CS", 1).get(0).getId());
+
+        Solution.likePost(1, 101);
+        Solution.likePost(2, 101);
+        assertCachedGroupFeed("CS");
+        Solution.unlikePost(1, 101);
+        Solution.unlikePost(2, 101);
+        assertCachedGroupFeed("CS");
+
+        Post edited = Solution.getPost(101);
+        edited.setText("edited");
+        Solution.updatePost(edited);
+        Solution.deletePost(100);
+        assertCachedGroupFeed("CS");
+        Feed first = Solution.getGroupFeed("CS", 2);
+        assertEquals("edited", first.stream().filter(p -> p.getId() == 101).findAny().get().getText());
+
+        //the returned posts are copies
+        first.get(0).setText("changed by the caller");
+        assertEquals(first.get(0).getId(), Solution.getGroupFeed("CS", 1).get(0).getId());
+        assertNotEquals("changed by the caller", Solution.getGroupFeed("CS", 1).get(0).getText());
+
+        Solution.deleteStudent(2);
+        assertCachedGroupFeed("CS");
+    }
+
+    @Test
+    public void groupFeedWindowTest() {
+        Comparator<Post> order = Comparator.comparing(Post::getDate).reversed()
+                .thenComparing(Comparator.comparing(Post::getLikes).reversed())
+                .thenComparing(Post::getId);
+        GroupFeedCache cache = new GroupFeedCache(order, 3, 1 << 20);
+        LocalDateTime start = LocalDateTime.of(2018, 1, 1, 12, 0);
+        List<Post> posts = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            Post post = buildPost(i, 1, "post " + i, start.minusMinutes(i));
+            post.setLikes(0);
+            posts.add(post);
+        }
+        cache.put("CS", posts, true, cache.stamp());
+        assertEquals(posts.subList(0, 3), cache.get("CS", 3));
+        assertNull(cache.get("CS", 4));
+        assertNull(cache.get("CS", -1));
+
+        //a stale read is not cached
+        long stamp = cache.stamp();
+        cache.invalidate("Math");
+        cache.put("Math", posts, true, stamp);
+        assertNull(cache.get("Math", 1));
+
+        Post newest = buildPost(6, 1, "post 6", start);
+        newest.setLikes(0);
+        cache.added("CS", newest);
+        assertEquals(Arrays.asList(newest, posts.get(0), posts.get(1)), cache.get("CS", 3));
+
+        //removing a post shrinks the window, post 3 left it when post 6 arrived
+        cache.removed("CS", 6);
+        assertEquals(posts.subList(0, 2), cache.get("CS", 2));
+        assertNull(cache.get("CS", 3));
+        cache.likesChanged("CS", 1, posts.get(0).getDate(), 2);
+        assertEquals(Integer.valueOf(2), cache.get("CS", 1).get(0).getLikes());
+        //an uncached older post cannot enter the window
+        cache.likesChanged("CS", 4, posts.get(3).getDate(), 1);
+        assertEquals(2, cache.get("CS", 2).size());
+        //an uncached post with the date of the last cached one may, so the group is dropped
+        cache.likesChanged("CS", 7, posts.get(1).getDate(), 1);
+        assertNull(cache.get("CS", 1));
+
+        cache.clear();
+        assertNull(cache.get("CS", 1));
+
+        GroupFeedCache disabled = new GroupFeedCache(order, 3, 0);
+        disabled.put("CS", posts, true, disabled.stamp());
+        assertNull(disabled.get("CS", 1));
+    }
+
+    @Test
+    public void columnarFeedTest() {
+        buildFeeds();
+        Feed studentFeed = Solution.getStudentFeed(1);
+        Feed groupFeed = Solution.getGroupFeed("CS");
+        System.setProperty("feed.columnar", "true");
+        try {
+            Feed columnar = Solution.getStudentFeed(1);
+            assertTrue(columnar instanceof ColumnarFeed);
+            assertEquals(studentFeed, columnar);
+            assertEquals(studentFeed, ((ColumnarFeed) columnar).toFeed());
+            assertEquals(groupFeed, Solution.getGroupFeed("CS"));
+            assertEquals(studentFeed.subList(0, 3), Solution.getStudentFeed(1, 3));
+            assertTrue(Solution.getGroupFeed("CS", 2) instanceof ColumnarFeed);
+            assertEquals(groupFeed.subList(0, 2), Solution.getGroupFeed("CS", 2));
+        } finally {
+            System.clearProperty("feed.columnar");
+        }
+
+        ColumnarFeed columnar = new ColumnarFeed(1);
+        columnar.addAll(studentFeed);
+        assertEquals(studentFeed, columnar);
+        assertEquals(studentFeed.hashCode(), columnar.hashCode());
+        PostView first = columnar.view(0);
+        assertEquals(studentFeed.get(0).getId(), first.getId());
+        assertEquals((int) studentFeed.get(0).getLikes(), columnar.getLikes(0));
+        assertEquals(studentFeed.get(0).getDate(), columnar.getDate(0));
+
+        //rows are written through set, and the views see them
+        Post edited = columnar.get(0);
+        edited.setText("edited");
+        assertEquals(studentFeed.get(0).getText(), columnar.getText(0));
+        columnar.set(0, edited);
+        assertEquals("edited", first.getText());
+
+        Post last = columnar.remove(columnar.size() - 1);
+        //the rows moved, so the view no longer reads a row
+        try {
+            first.getText();
+            fail();
+        } catch (ConcurrentModificationException e) {
+            //expected
+        }
+        columnar.add(0, last);
+        assertEquals(last, columnar.get(0));
+        PostView newest = columnar.view(0);
+        assertEquals(last.getId(), newest.getId());
+        columnar.sort(Comparator.comparing(Post::getId));
+        try {
+            newest.getId();
+            fail();
+        } catch (ConcurrentModificationException e) {
+            //expected
+        }
+        assertTrue(columnar.get(0).getId() <= columnar.get(1).getId());
+        columnar.subList(1, columnar.size()).clear();
+        assertEquals(1, columnar.size());
+        columnar.clear();
+        assertTrue(columnar.isEmpty());
+    }
+}
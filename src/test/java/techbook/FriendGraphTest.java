@@ -0,0 +1,153 @@
+package techbook;
+
+import org.junit.Test;
+import techbook.business.RankedStudent;
+import techbook.business.Student;
+import techbook.data.DBConnector;
+import techbook.data.FriendGraph;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FriendGraphTest extends AbstractTest {
+
+    //1 - 2 - 4
+    //  \   / |
+    //    3   5
+    private void buildGraph() {
+        for (int i = 1; i <= 5; i++)
+            Solution.addStudent(buildStudent(i, "CS"));
+        Solution.makeAsFriends(1, 2);
+        Solution.makeAsFriends(1, 3);
+        Solution.makeAsFriends(2, 4);
+        Solution.makeAsFriends(3, 4);
+        Solution.makeAsFriends(4, 5);
+    }
+
+    @Test
+    public void rankedPeopleYouMayKnowTest() {
+        buildGraph();
+        Solution.joinGroup(1, "Chess");
+        Solution.joinGroup(2, "Chess");
+
+        ArrayList<RankedStudent> ranked = Solution.getRankedPeopleYouMayKnowList(1, 5);
+        assertEquals(1, ranked.size());
+        assertEquals(buildStudent(4, "CS"), ranked.get(0).getStudent());
+        assertEquals(2, (int) ranked.get(0).getMutualFriends());
+        assertEquals(1, (int) ranked.get(0).getSharedGroups());
+
+        //3 has mutual friends 1 and 4 with 2, 5 only has 4
+        ranked = Solution.getRankedPeopleYouMayKnowList(2, 5);
+        assertEquals(2, ranked.size());
+        assertEquals(3, (int) ranked.get(0).getStudent().getId());
+        assertEquals(2, (int) ranked.get(0).getMutualFriends());
+        assertEquals(5, (int) ranked.get(1).getStudent().getId());
+        assertEquals(1, (int) ranked.get(1).getMutualFriends());
+
+        ranked = Solution.getRankedPeopleYouMayKnowList(2, 1);
+        assertEquals(1, ranked.size());
+        assertEquals(3, (int) ranked.get(0).getStudent().getId());
+
+        assertTrue(Solution.getRankedPeopleYouMayKnowList(2, 0).isEmpty());
+        assertEquals(Solution.getPeopleYouMayKnowList(2).size(),
+                Solution.getRankedPeopleYouMayKnowList(2, 100).size());
+    }
+
+    @Test
+    public void mutualFriendsCountTest() {
+        System.setProperty("mutualFriends.maintain", "true");
+        try {
+            buildGraph();
+            assertEquals(2, Solution.getMutualFriendsCount(1, 4));
+            assertEquals(2, Solution.getMutualFriendsCount(4, 1));
+            assertEquals(1, Solution.getMutualFriendsCount(2, 5));
+            assertEquals(0, Solution.getMutualFriendsCount(1, 5));
+
+            Solution.makeAsNotFriends(3, 4);
+            assertEquals(1, Solution.getMutualFriendsCount(1, 4));
+            Solution.makeAsFriends(1, 5);
+            assertEquals(2, Solution.getMutualFriendsCount(1, 4));
+            assertEquals(2, Solution.getMutualFriendsCount(2, 5));
+
+            Solution.deleteStudent(4);
+            assertEquals(1, Solution.getMutualFriendsCount(2, 5));
+            assertEquals(0, Solution.getMutualFriendsCount(1, 4));
+            assertEquals(1, Solution.getMutualFriendsCount(2, 3));
+
+            int[][] pairs = {{1, 2}, {1, 3}, {1, 5}, {2, 3}, {2, 5}, {3, 5}};
+            int[] maintained = new int[pairs.length];
+            for (int i = 0; i < pairs.length; i++)
+                maintained[i] = Solution.getMutualFriendsCount(pairs[i][0], pairs[i][1]);
+            Solution.rebuildMutualFriends();
+            for (int i = 0; i < pairs.length; i++)
+                assertEquals(maintained[i], Solution.getMutualFriendsCount(pairs[i][0], pairs[i][1]));
+            System.clearProperty("mutualFriends.maintain");
+            for (int i = 0; i < pairs.length; i++)
+                assertEquals(maintained[i], Solution.getMutualFriendsCount(pairs[i][0], pairs[i][1]));
+        } finally {
+            System.clearProperty("mutualFriends.maintain");
+        }
+    }
+
+    @Test
+    public void studentsWithinDistanceTest() {
+        buildGraph();
+        Solution.addStudent(buildStudent(6, "CS"));
+
+        TreeMap<Integer, ArrayList<Student>> byDistance = Solution.getStudentsByDistance(1, 6);
+        assertEquals(3, byDistance.size());
+        assertEquals(Arrays.asList(buildStudent(2, "CS"), buildStudent(3, "CS")), byDistance.get(1));
+        assertEquals(Arrays.asList(buildStudent(4, "CS")), byDistance.get(2));
+        assertEquals(Arrays.asList(buildStudent(5, "CS")), byDistance.get(3));
+
+        ArrayList<Student> within = Solution.getStudentsWithinDistance(1, 2);
+        assertEquals(Arrays.asList(buildStudent(2, "CS"), buildStudent(3, "CS"), buildStudent(4, "CS")), within);
+
+        assertTrue(Solution.getStudentsWithinDistance(1, 0).isEmpty());
+        assertTrue(Solution.getStudentsWithinDistance(6, 3).isEmpty());
+        assertTrue(Solution.getStudentsWithinDistance(7, 3).isEmpty());
+    }
+
+    @Test
+    public void separationDistributionTest() {
+        buildGraph();
+        //with 1024 registers per counter, five students are counted exactly
+        TreeMap<Integer, Long> distribution = Solution.getSeparationDistribution(10);
+        assertEquals(3, distribution.size());
+        assertEquals(5L, (long) distribution.get(1));
+        assertEquals(4L, (long) distribution.get(2));
+        assertEquals(1L, (long) distribution.get(3));
+        assertTrue(Solution.getSeparationDistribution(3).isEmpty());
+        assertTrue(Solution.getSeparationDistribution(17).isEmpty());
+    }
+
+    @Test
+    public void concurrentLoadTest() throws SQLException, InterruptedException {
+        buildGraph();
+        //students and their friendships are added while the graph is read, each read sees one snapshot
+        Thread writer = new Thread(() -> {
+            for (int i = 6; i <= 200; i++) {
+                Solution.addStudent(buildStudent(i, "CS"));
+                Solution.makeAsFriends(i - 1, i);
+            }
+        });
+        writer.start();
+        try (Connection c = DBConnector.getConnection()) {
+            while (writer.isAlive()) {
+                FriendGraph graph = FriendGraph.load(c);
+                assertTrue(graph.size() >= 5);
+                assertTrue(c.getAutoCommit());
+            }
+            writer.join();
+            assertEquals(200, FriendGraph.load(c).size());
+        }
+        assertFalse(Solution.getSeparationDistribution(4).isEmpty());
+    }
+}
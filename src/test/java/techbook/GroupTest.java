@@ -0,0 +1,104 @@
+package techbook;
+
+import org.junit.Test;
+import techbook.business.Post;
+import techbook.data.DBConnector;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+import static org.junit.Assert.assertEquals;
+import static techbook.business.ReturnValue.*;
+
+public class GroupTest extends AbstractTest {
+
+    private static int groupNames() throws SQLException {
+        try (Connection c = DBConnector.getConnection()) {
+            ResultSet rs = c.createStatement().executeQuery("SELECT COUNT(*) FROM GroupNames");
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void groupIdsTest() throws SQLException {
+        checkGroups();
+    }
+
+    @Test
+    public void memberBitmapsTest() throws SQLException {
+        System.setProperty("groups.memberBitmaps", "true");
+        try {
+            Solution.clearTables();
+            checkGroups();
+
+            //creating the tables again fails, and leaves the members of the groups to be loaded from Groups
+            Solution.createTables();
+            LocalDateTime date = LocalDateTime.of(2018, 1, 1, 12, 0);
+            assertEquals(OK, Solution.addPost(buildPost(2, 1, "post", date), "CS"));
+
+            //with a closed connection any query fails, so the post of a non member is rejected by the bitmaps alone
+            Post post = buildPost(3, 3, "post", date);
+            Connection closed = DBConnector.getConnection();
+            closed.close();
+            Connection previous = DBConnector.pinConnection(closed);
+            try {
+                assertEquals(NOT_EXISTS, Solution.addPost(post, "CS"));
+            } finally {
+                DBConnector.pinConnection(previous);
+            }
+        } finally {
+            System.clearProperty("groups.memberBitmaps");
+        }
+    }
+
+    private void checkGroups() throws SQLException {
+        for (int i = 1; i <= 3; i++) {
+            assertEquals(OK, Solution.addStudent(buildStudent(i, i == 3 ? "EE" : "CS")));
+        }
+        assertEquals(2, groupNames());
+
+        //unknown groups are not created by lookups
+        assertEquals(NOT_EXISTS, Solution.leaveGroup(1, "chess"));
+        Post post = buildPost(1, 1, "post", LocalDateTime.of(2018, 1, 1, 12, 0));
+        assertEquals(NOT_EXISTS, Solution.addPost(post, "chess"));
+        assertEquals(0, Solution.getGroupFeed("chess").size());
+        assertEquals(2, groupNames());
+
+        assertEquals(OK, Solution.joinGroup(1, "chess"));
+        assertEquals(OK, Solution.joinGroup(3, "chess"));
+        assertEquals(ALREADY_EXISTS, Solution.joinGroup(3, "chess"));
+        assertEquals(3, groupNames());
+        assertEquals(OK, Solution.addPost(post, "chess"));
+        assertEquals(OK, Solution.likePost(3, 1));
+        assertEquals(NOT_EXISTS, Solution.likePost(2, 1));
+        assertEquals(1, Solution.getGroupFeed("chess").size());
+        assertEquals(Integer.valueOf(1), Solution.getGroupFeed("chess", 10).get(0).getLikes());
+        assertEquals(OK, Solution.leaveGroup(3, "chess"));
+        assertEquals(NOT_EXISTS, Solution.leaveGroup(3, "chess"));
+        //a group stays named after its last member leaves
+        assertEquals(OK, Solution.leaveGroup(1, "chess"));
+        assertEquals(3, groupNames());
+
+        //a group is created along with its first member, and not when the member is not added
+        assertEquals(NOT_EXISTS, Solution.joinGroup(4, "go"));
+        assertEquals(3, groupNames());
+        //a join in a transaction of a pinned connection, which the join leaves uncommitted and so is rolled back
+        try (Connection c = DBConnector.getConnection()) {
+            c.setAutoCommit(false);
+            Connection previous = DBConnector.pinConnection(c);
+            try {
+                assertEquals(OK, Solution.joinGroup(1, "go"));
+            } finally {
+                DBConnector.pinConnection(previous);
+            }
+        }
+        assertEquals(3, groupNames());
+        //the rolled back id of the group is not remembered
+        assertEquals(OK, Solution.joinGroup(2, "go"));
+        assertEquals(OK, Solution.leaveGroup(2, "go"));
+        assertEquals(4, groupNames());
+    }
+}
@@ -0,0 +1,125 @@
+package techbook;
+
+import techbook.business.ReturnValue;
+import techbook.data.DBConnector;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares likes of one hot post by many concurrent clients with a single counter row per post
+ * (likes.counterSlots=1) and with striped counters. Each client likes and unlikes the post as its own students,
+ * so every call changes the count, and the rounds alternate between the two so both see the same database state.
+ * The clients share a pool of connections, as the callers of an application server do, so thousands of them
+ * can be concurrent; connecting is not timed, only waiting for a connection, the statements and their commits.
+ * Run with: java techbook.LikeCounterBenchmark [clients] [connections] [slots] [seconds per round] [rounds]
+ */
+public class LikeCounterBenchmark {
+
+    private static final int STUDENTS_PER_CLIENT = 10;
+
+    /**
+     * output: the likes and unlikes per second of clients hammering post 1 for seconds over the pooled connections
+     */
+    private static double run(int clients, BlockingQueue<Connection> pool, int slots, int seconds)
+            throws InterruptedException {
+        System.setProperty("likes.counterSlots", String.valueOf(slots));
+        AtomicLong calls = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Thread> running = new ArrayList<>();
+        for (int t = 0; t < clients; t++) {
+            int first = t * STUDENTS_PER_CLIENT + 1;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; System.nanoTime() < end; i++) {
+                    int student = first + i % STUDENTS_PER_CLIENT;
+                    Connection c;
+                    try {
+                        c = pool.take();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    DBConnector.pinConnection(c);
+                    try {
+                        //the first pass likes, the next one unlikes, and so on
+                        ReturnValue result = (i / STUDENTS_PER_CLIENT) % 2 == 0
+                                ? Solution.likePost(student, 1) : Solution.unlikePost(student, 1);
+                        if (result == ReturnValue.OK)
+                            calls.incrementAndGet();
+                        else
+                            errors.incrementAndGet();
+                    } finally {
+                        DBConnector.pinConnection(null);
+                        pool.add(c);
+                    }
+                }
+            });
+            running.add(thread);
+            thread.start();
+        }
+        for (Thread thread : running)
+            thread.join();
+        //start the next round from no likes
+        try (Connection c = DBConnector.getConnection();
+             PreparedStatement likes = c.prepareStatement("DELETE FROM likes");
+             PreparedStatement counts = c.prepareStatement("DELETE FROM PostLikes")) {
+            likes.execute();
+            counts.execute();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        if (errors.get() > 0)
+            System.out.printf("%d calls failed%n", errors.get());
+        return (double) calls.get() / seconds;
+    }
+
+    public static void main(String[] args) throws SQLException, InterruptedException {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int slots = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+
+        Solution.dropTables();
+        Solution.createTables();
+        try (Connection c = DBConnector.getConnection();
+             PreparedStatement students = c.prepareStatement("INSERT INTO students\n" +
+                     "SELECT g, 'student ' || g, 'CS' FROM generate_series(1, ?) g")) {
+            students.setInt(1, clients * STUDENTS_PER_CLIENT);
+            students.execute();
+        }
+        Solution.addPost(AbstractTest.buildPost(1, 1, "hot post", LocalDateTime.now()), null);
+        BlockingQueue<Connection> pool = new ArrayBlockingQueue<>(connections);
+        try {
+            for (int i = 0; i < connections; i++)
+                pool.add(DBConnector.getConnection());
+            //the first round is warm up
+            double single = 0;
+            double striped = 0;
+            for (int r = 0; r <= rounds; r++) {
+                double one = run(clients, pool, 1, seconds);
+                double many = run(clients, pool, slots, seconds);
+                if (r > 0) {
+                    single = Math.max(single, one);
+                    striped = Math.max(striped, many);
+                }
+            }
+            System.out.printf("%d clients over %d connections liking one post, best of %d rounds of %d s%n",
+                    clients, connections, rounds, seconds);
+            System.out.printf("1 counter row:    %8.0f likes/s%n", single);
+            System.out.printf("%2d counter slots: %8.0f likes/s%n", slots, striped);
+        } finally {
+            for (Connection c : pool)
+                c.close();
+            System.clearProperty("likes.counterSlots");
+            Solution.dropTables();
+        }
+    }
+}
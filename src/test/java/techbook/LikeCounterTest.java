@@ -0,0 +1,87 @@
+package techbook;
+
+import org.junit.Test;
+import techbook.data.DBConnector;
+import techbook.data.LikeCounters;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static techbook.business.ReturnValue.*;
+
+public class LikeCounterTest extends AbstractTest {
+
+    private static int counterRows() throws SQLException {
+        try (Connection c = DBConnector.getConnection()) {
+            ResultSet rs = c.createStatement().executeQuery("SELECT COUNT(*) FROM PostLikes");
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void slotsTest() {
+        int[] used = new int[16];
+        for (int id = 1; id <= 1600; id++)
+            used[LikeCounters.slot(id, 16)]++;
+        for (int count : used)
+            assertTrue(count + " ids in a slot", count > 50 && count < 150);
+        assertEquals(0, LikeCounters.slot(7, 1));
+    }
+
+    @Test
+    public void stripedCountsTest() throws SQLException {
+        for (int i = 1; i <= 40; i++) {
+            assertEquals(OK, Solution.addStudent(buildStudent(i, "CS")));
+        }
+        assertEquals(OK, Solution.addPost(buildPost(1, 1, "hot post", LocalDateTime.of(2018, 1, 1, 12, 0)), null));
+        for (int i = 1; i <= 40; i++)
+            assertEquals(OK, Solution.likePost(i, 1));
+        assertEquals(ALREADY_EXISTS, Solution.likePost(5, 1));
+        assertEquals(Integer.valueOf(40), Solution.getPost(1).getLikes());
+        assertTrue(counterRows() > 1);
+
+        for (int i = 1; i <= 10; i++)
+            assertEquals(OK, Solution.unlikePost(i, 1));
+        assertEquals(Integer.valueOf(30), Solution.getPost(1).getLikes());
+
+        try (Connection c = DBConnector.getConnection()) {
+            assertTrue(new LikeCounters().compact(c, 10) > 0);
+        }
+        assertEquals(1, counterRows());
+        assertEquals(Integer.valueOf(30), Solution.getPost(1).getLikes());
+
+        //after compaction the slots of unlikes go below zero, the sum stays right
+        for (int i = 11; i <= 20; i++)
+            assertEquals(OK, Solution.unlikePost(i, 1));
+        assertEquals(OK, Solution.deleteStudent(40));
+        assertEquals(Integer.valueOf(19), Solution.getPost(1).getLikes());
+
+        assertEquals(OK, Solution.deletePost(1));
+        assertEquals(0, counterRows());
+    }
+
+    @Test
+    public void backgroundCompactionTest() throws SQLException, InterruptedException {
+        System.setProperty("likes.compactEvery", "1");
+        try {
+            for (int i = 1; i <= 20; i++)
+                assertEquals(OK, Solution.addStudent(buildStudent(i, "CS")));
+            assertEquals(OK, Solution.addPost(buildPost(1, 1, "hot post", LocalDateTime.of(2018, 1, 1, 12, 0)), null));
+            for (int i = 1; i <= 20; i++)
+                assertEquals(OK, Solution.likePost(i, 1));
+            //the likes return before their compactions, the one queued after the last like folds every slot
+            long deadline = System.currentTimeMillis() + 5000;
+            while (counterRows() > 1 && System.currentTimeMillis() < deadline)
+                Thread.sleep(20);
+            assertEquals(1, counterRows());
+            assertEquals(Integer.valueOf(20), Solution.getPost(1).getLikes());
+        } finally {
+            System.clearProperty("likes.compactEvery");
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package techbook;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import techbook.business.Post;
+import techbook.data.DBConnector;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static techbook.business.ReturnValue.*;
+
+/**
+ * Runs only when posts are partitioned by month and not sharded, i.e. with -Dposts.partitionByMonth=true
+ */
+public class PartitionTest extends AbstractTest {
+
+    @Before
+    public void partitioned() {
+        Assume.assumeTrue(Boolean.parseBoolean(DBConnector.getProperty("posts.partitionByMonth", "false")));
+        Assume.assumeTrue(DBConnector.getShards().isEmpty());
+    }
+
+    @After
+    public void dropArchives() throws SQLException {
+        System.clearProperty("posts.retainedMonths");
+        try (Connection c = DBConnector.getConnection()) {
+            for (String table : tables(c, "%_archived"))
+                c.createStatement().execute("DROP TABLE " + table);
+        }
+    }
+
+    private static List<String> tables(Connection c, String pattern) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        ResultSet rs = c.createStatement().executeQuery(
+                String.format("SELECT relname FROM pg_class WHERE relkind = 'r' AND relname LIKE '%s' ORDER BY relname", pattern));
+        while (rs.next())
+            tables.add(rs.getString(1));
+        return tables;
+    }
+
+    @Test
+    public void retentionTest() throws SQLException {
+        Solution.addStudent(buildStudent(1, "CS"));
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        assertEquals(OK, Solution.addPost(buildPost(1, 1, "post 1", now.minusMonths(3)), "CS"));
+        assertEquals(OK, Solution.addPost(buildPost(2, 1, "post 2", now.minusMonths(3)), null));
+        assertEquals(OK, Solution.likePost(1, 1));
+        //ids are unique across the months, the month of the post is created all the same
+        assertEquals(ALREADY_EXISTS, Solution.addPost(buildPost(1, 1, "post 1", now.minusMonths(2)), null));
+        assertEquals(Integer.valueOf(1), Solution.getPost(1).getLikes());
+        try (Connection c = DBConnector.getConnection()) {
+            assertEquals(2, tables(c, "posts\\_%").size());
+            assertEquals(2, tables(c, "likes\\_%").size());
+        }
+
+        //months that are no longer kept take no posts, and stay until the maintenance archives them
+        System.setProperty("posts.retainedMonths", "2");
+        assertEquals(OK, Solution.addPost(buildPost(3, 1, "post 3", now), "CS"));
+        assertEquals(Integer.valueOf(1), Solution.getPost(1).getLikes());
+        assertEquals(OK, Solution.archivePostMonths());
+        assertEquals(OK, Solution.archivePostMonths());
+        assertEquals(Post.badPost(), Solution.getPost(1));
+        assertEquals(1, Solution.getGroupFeed("CS").size());
+        assertEquals(BAD_PARAMS, Solution.addPost(buildPost(4, 1, "post 4", now.minusMonths(3)), null));
+        assertEquals(OK, Solution.addPost(buildPost(5, 1, "post 5", now.minusMonths(1)), null));
+        try (Connection c = DBConnector.getConnection()) {
+            //likes and posts of two months, the first of which has the posts
+            List<String> archived = tables(c, "%_archived");
+            assertEquals(4, archived.size());
+            assertTrue(archived.get(0).startsWith("likes_"));
+            ResultSet rs = c.createStatement().executeQuery("SELECT COUNT(*) FROM " + archived.get(2));
+            rs.next();
+            assertEquals(2, rs.getInt(1));
+            //nothing derived from the archived posts is left
+            for (String table : new String[]{"PostLikes", "LikeBuckets"}) {
+                rs = c.createStatement().executeQuery("SELECT COUNT(*) FROM " + table);
+                rs.next();
+                assertEquals(0, rs.getInt(1));
+            }
+            rs = c.createStatement().executeQuery("SELECT id FROM PostIds ORDER BY id");
+            rs.next();
+            assertEquals(3, rs.getInt(1));
+            rs.next();
+            assertEquals(5, rs.getInt(1));
+            assertFalse(rs.next());
+        }
+        //the ids of archived posts are free again
+        assertEquals(OK, Solution.addPost(buildPost(1, 1, "post 1", now), null));
+    }
+}
@@ -0,0 +1,58 @@
+package techbook;
+
+import org.junit.Test;
+import techbook.business.Feed;
+import techbook.business.ReturnValue;
+import techbook.business.Student;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static techbook.business.ReturnValue.*;
+
+public class PipelineTest extends AbstractTest {
+
+    @Test
+    public void pipelineTest() throws ExecutionException, InterruptedException {
+        LocalDateTime date = LocalDateTime.of(2018, 1, 1, 12, 0);
+        Pipeline p = new Pipeline();
+        CompletableFuture<ReturnValue> added = p.add(() -> Solution.addStudent(buildStudent(1, "CS")));
+        CompletableFuture<ReturnValue> duplicate = p.add(() -> Solution.addStudent(buildStudent(1, "CS")));
+        p.add(() -> Solution.addStudent(buildStudent(2, "CS")));
+        CompletableFuture<ReturnValue> friends = p.add(() -> Solution.makeAsFriends(1, 2));
+        CompletableFuture<ReturnValue> posted = p.add(() -> Solution.addPost(buildPost(1, 1, "post 1", date), "CS"));
+        CompletableFuture<ReturnValue> liked = p.add(() -> Solution.likePost(2, 1));
+        CompletableFuture<Feed> feed = p.add(() -> Solution.getGroupFeed("CS", 10));
+        //deleteStudent runs in a transaction, the calls after it must be back in autocommit
+        CompletableFuture<ReturnValue> deleted = p.add(() -> Solution.deleteStudent(2));
+        CompletableFuture<ReturnValue> readded = p.add(() -> Solution.addStudent(buildStudent(2, "EE")));
+        CompletableFuture<Object> failed = p.add(() -> {
+            throw new IllegalStateException("failed");
+        });
+        CompletableFuture<Student> profile = p.add(() -> Solution.getStudentProfile(2));
+        assertEquals(11, p.size());
+        assertTrue(!added.isDone());
+
+        assertEquals(11, p.flush());
+        assertEquals(0, p.size());
+        assertEquals(OK, added.get());
+        assertEquals(ALREADY_EXISTS, duplicate.get());
+        assertEquals(OK, friends.get());
+        assertEquals(OK, posted.get());
+        assertEquals(OK, liked.get());
+        assertEquals(1, feed.get().size());
+        assertEquals(Integer.valueOf(1), feed.get().get(0).getLikes());
+        assertEquals(OK, deleted.get());
+        assertEquals(OK, readded.get());
+        assertTrue(failed.isCompletedExceptionally());
+        assertEquals("EE", profile.get().getFaculty());
+
+        //everything was committed
+        assertEquals("EE", Solution.getStudentProfile(2).getFaculty());
+        assertEquals(Integer.valueOf(0), Solution.getGroupFeed("CS").get(0).getLikes());
+        assertEquals(0, p.flush());
+    }
+}
@@ -0,0 +1,63 @@
+package techbook;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import techbook.data.DBConnector;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs only when read replicas are configured, e.g. with
+ * -Dreplicas=jdbc:postgresql://localhost:5433/cs236363 for a streaming replica of the test database.
+ */
+public class ReplicaTest extends AbstractTest {
+
+    private static final int WINDOW_MILLIS = 300;
+
+    @Before
+    public void setWindow() {
+        Assume.assumeFalse(DBConnector.getReplicas().isEmpty());
+        System.setProperty("replicas.readYourWritesMillis", String.valueOf(WINDOW_MILLIS));
+    }
+
+    @After
+    public void clearWindow() {
+        System.clearProperty("replicas.readYourWritesMillis");
+    }
+
+    private static boolean readsFromReplica() throws SQLException {
+        try (Connection c = DBConnector.getReadConnection()) {
+            ResultSet rs = c.createStatement().executeQuery("SELECT pg_is_in_recovery()");
+            rs.next();
+            return rs.getBoolean(1);
+        }
+    }
+
+    @Test
+    public void readYourWritesTest() throws SQLException, InterruptedException {
+        Solution.addStudent(buildStudent(1, "CS"));
+        //right after the write the reads of this thread go to the primary
+        assertEquals("CS", Solution.getStudentProfile(1).getFaculty());
+        assertFalse(readsFromReplica());
+
+        Thread.sleep(WINDOW_MILLIS + 50);
+        assertTrue(readsFromReplica());
+        //the group feed is read from the primary, without sending the reads after it there
+        Solution.getGroupFeed("CS");
+        Solution.getGroupFeed("CS", 5);
+        assertTrue(readsFromReplica());
+        //the replica catches up shortly
+        long deadline = System.currentTimeMillis() + 5000;
+        while (Solution.getStudentProfile(1).getId() == -1 && System.currentTimeMillis() < deadline)
+            Thread.sleep(50);
+        assertEquals("CS", Solution.getStudentProfile(1).getFaculty());
+    }
+}
@@ -0,0 +1,59 @@
+package techbook;
+
+import org.junit.Test;
+import techbook.data.RoaringBitmap;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RoaringBitmapTest {
+
+    private static void assertSame(BitSet expected, RoaringBitmap bitmap, int range) {
+        assertEquals(expected.cardinality(), bitmap.cardinality());
+        for (int i = 0; i < range; i++)
+            assertEquals(expected.get(i), bitmap.contains(i));
+    }
+
+    @Test
+    public void containersTest() {
+        //three chunks: dense (a bitmap once over 4096 values), sparse, and one filled then emptied back to an array
+        Random random = new Random(236363);
+        int range = 3 << 16;
+        BitSet expected = new BitSet(range);
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int i = 0; i < 60000; i++) {
+            int value = random.nextInt(1 << 16);
+            expected.set(value);
+            bitmap.add(value);
+            value = (1 << 16) + random.nextInt(1 << 16) / 100 * 100;
+            expected.set(value);
+            bitmap.add(value);
+        }
+        for (int i = 2 << 16; i < (2 << 16) + 5000; i++) {
+            expected.set(i);
+            bitmap.add(i);
+        }
+        assertSame(expected, bitmap, range);
+
+        for (int i = 0; i < 200000; i++) {
+            int value = random.nextInt(range);
+            expected.clear(value);
+            bitmap.remove(value);
+        }
+        for (int i = 2 << 16; i < (2 << 16) + 4990; i++) {
+            expected.clear(i);
+            bitmap.remove(i);
+        }
+        assertSame(expected, bitmap, range);
+
+        for (int i = 0; i < range; i++)
+            bitmap.remove(i);
+        assertTrue(bitmap.isEmpty());
+        bitmap.add(Integer.MAX_VALUE);
+        assertTrue(bitmap.contains(Integer.MAX_VALUE));
+        assertEquals(1, bitmap.cardinality());
+    }
+}
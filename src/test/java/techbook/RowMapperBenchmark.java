@@ -0,0 +1,78 @@
+package techbook;
+
+import techbook.business.Feed;
+import techbook.business.Post;
+import techbook.data.DBConnector;
+import techbook.data.RowMapper;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Compares mapping a large feed by column name (the old makePost) with Solution.POST_MAPPER.
+ * The feed is read once into a scrollable ResultSet, so only the mapping is timed.
+ * Run with: java techbook.RowMapperBenchmark [posts] [rounds]
+ */
+public class RowMapperBenchmark {
+
+    private static Post byName(ResultSet rs) throws SQLException {
+        Post p = new Post();
+        p.setId(rs.getInt("id"));
+        p.setAuthor(rs.getInt("author"));
+        p.setText(rs.getString("text"));
+        p.setTimeStamp(rs.getTimestamp("date"));
+        p.setLikes(rs.getInt("likesCount"));
+        return p;
+    }
+
+    private static long time(ResultSet rs, RowMapper<Post> mapper) throws SQLException {
+        rs.beforeFirst();
+        long start = System.nanoTime();
+        Feed f = new Feed();
+        while (rs.next())
+            f.add(mapper.map(rs));
+        return System.nanoTime() - start;
+    }
+
+    public static void main(String[] args) throws SQLException {
+        int posts = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        Solution.dropTables();
+        Solution.createTables();
+        try (Connection c = DBConnector.getConnection();
+             PreparedStatement student = c.prepareStatement("INSERT INTO students VALUES (1, 'author', 'CS')");
+             PreparedStatement fill = c.prepareStatement("INSERT INTO posts(id, author, text, date)\n" +
+                     "SELECT g, 1, 'post number ' || g, TIMESTAMP '2018-01-01' + g * INTERVAL '1 second'\n" +
+                     "FROM generate_series(1, ?) g");
+             PreparedStatement feed = c.prepareStatement("SELECT posts.*, 0 AS likesCount\n" +
+                             "FROM posts\n" +
+                             "ORDER BY posts.date DESC",
+                     ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY)) {
+            student.execute();
+            fill.setInt(1, posts);
+            fill.execute();
+
+            ResultSet rs = feed.executeQuery();
+            RowMapper<Post> indexed = Solution.POST_MAPPER.forResultSet(rs);
+            //rounds alternate between the two mappers so both see the same JIT and GC state, the first is warm up
+            long nameNanos = Long.MAX_VALUE;
+            long indexNanos = Long.MAX_VALUE;
+            for (int r = 0; r <= rounds; r++) {
+                long name = time(rs, RowMapperBenchmark::byName);
+                long index = time(rs, indexed);
+                if (r > 0) {
+                    nameNanos = Math.min(nameNanos, name);
+                    indexNanos = Math.min(indexNanos, index);
+                }
+            }
+            System.out.printf("%d posts, best of %d rounds%n", posts, rounds);
+            System.out.printf("by name:  %8.2f ms (%5.1f ns/row)%n", nameNanos / 1e6, (double) nameNanos / posts);
+            System.out.printf("by index: %8.2f ms (%5.1f ns/row)%n", indexNanos / 1e6, (double) indexNanos / posts);
+        } finally {
+            Solution.dropTables();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package techbook;
+
+import org.junit.Test;
+import techbook.business.Feed;
+import techbook.business.Post;
+
+import java.time.LocalDateTime;
+
+import static org.junit.Assert.assertEquals;
+import static techbook.business.ReturnValue.*;
+
+public class SearchTest extends AbstractTest {
+
+    private static void assertFound(Feed found, int... ids) {
+        assertEquals(ids.length, found.size());
+        for (int i = 0; i < ids.length; i++)
+            assertEquals(Integer.valueOf(ids[i]), found.get(i).getId());
+    }
+
+    private static void addPost(int id, String text, int day, String groupName) {
+        assertEquals(OK, Solution.addPost(buildPost(id, 1, text, LocalDateTime.of(2018, 1, day, 12, 0)), groupName));
+    }
+
+    @Test
+    public void searchPostsTest() {
+        assertEquals(OK, Solution.addStudent(buildStudent(1, "CS")));
+        assertEquals(OK, Solution.addStudent(buildStudent(2, "CS")));
+        assertEquals(OK, Solution.addStudent(buildStudent(3, "CS")));
+        assertEquals(OK, Solution.makeAsFriends(1, 2));
+        assertEquals(OK, Solution.joinGroup(1, "chess"));
+        addPost(1, "databases are fun", 1, null);
+        addPost(2, "I like databases, and database indexes, and a database course", 2, null);
+        addPost(3, "the database exam is tomorrow", 3, null);
+        addPost(4, "chess openings and the database of games", 4, "chess");
+        addPost(5, "nothing to see here", 5, null);
+
+        //ranked by how often the words appear, then newest first; words match in any form
+        assertFound(Solution.searchPosts(2, "database", 10), 2, 3, 1);
+        assertFound(Solution.searchPosts(2, "database", 2), 2, 3);
+        assertFound(Solution.searchPosts(2, "database exams", 10), 3);
+        assertFound(Solution.searchPosts(2, "\"database exam\" or fun", 10), 3, 1);
+        assertFound(Solution.searchPosts(2, "database -exam", 10), 2, 1);
+        assertFound(Solution.searchPosts(2, "volleyball", 10));
+        //the posts of no group are found only by the friends of their author, whose student feeds show them
+        assertFound(Solution.searchPosts(3, "database", 10));
+        assertFound(Solution.searchPosts(1, "database", 10));
+
+        //posts of a group are found in its group only
+        assertFound(Solution.searchPosts("database", 10, "chess"), 4);
+        assertFound(Solution.searchPosts("database", 10, "go"));
+
+        Post post = Solution.getPost(5);
+        post.setText("a database at last");
+        assertEquals(OK, Solution.updatePost(post));
+        assertFound(Solution.searchPosts(2, "database", 10), 2, 5, 3, 1);
+        assertEquals(OK, Solution.deletePost(2));
+        assertFound(Solution.searchPosts(2, "database", 10), 5, 3, 1);
+    }
+}
@@ -0,0 +1,73 @@
+package techbook;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import techbook.business.Post;
+import techbook.data.DBConnector;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+import static org.junit.Assert.assertEquals;
+import static techbook.business.ReturnValue.*;
+
+/**
+ * Runs only when the data is sharded, e.g. with -Ddatabase=jdbc:postgresql://localhost:5432/coord
+ * -Dshards=jdbc:postgresql://localhost:5432/shard0,jdbc:postgresql://localhost:5432/shard1 for three empty databases.
+ */
+public class ShardTest extends AbstractTest {
+
+    @Before
+    public void sharded() {
+        Assume.assumeFalse(DBConnector.getShards().isEmpty());
+    }
+
+    private static int count(int shard, String sql) throws SQLException {
+        try (Connection c = DBConnector.getShardConnection(shard)) {
+            ResultSet rs = c.createStatement().executeQuery(sql);
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void placementTest() throws SQLException {
+        int students = 20;
+        for (int i = 1; i <= students; i++) {
+            assertEquals(OK, Solution.addStudent(buildStudent(i, "CS")));
+            assertEquals(OK, Solution.addPost(buildPost(i, i, "post " + i, LocalDateTime.of(2018, 1, 1, 12, i)), null));
+            if (i > 1) {
+                assertEquals(OK, Solution.makeAsFriends(i, i - 1));
+                assertEquals(OK, Solution.likePost(i, i - 1));
+            }
+        }
+        //a post id is unique across the shards, though posts of different authors are on different shards
+        Post duplicate = Solution.getPost(1);
+        for (int author = 2; author <= students; author++) {
+            duplicate.setAuthor(author);
+            assertEquals(ALREADY_EXISTS, Solution.addPost(duplicate, null));
+        }
+
+        int total = 0;
+        for (int shard = 0; shard < DBConnector.getShards().size(); shard++) {
+            int here = count(shard, "SELECT COUNT(*) FROM students");
+            total += here;
+            //a student's data is on the student's shard
+            assertEquals(here, count(shard, "SELECT COUNT(*) FROM posts JOIN students ON posts.author = students.id"));
+            assertEquals(here, count(shard, "SELECT COUNT(*) FROM groups JOIN students ON groups.studentId = students.id"));
+            assertEquals(count(shard, "SELECT COUNT(*) FROM friends"),
+                    count(shard, "SELECT COUNT(*) FROM friends JOIN students ON friends.id1 = students.id"));
+            assertEquals(count(shard, "SELECT COUNT(*) FROM likes"),
+                    count(shard, "SELECT COUNT(*) FROM likes JOIN students ON likes.studentId = students.id"));
+        }
+        assertEquals(students, total);
+
+        //feeds merge the posts of all shards
+        assertEquals(2, Solution.getStudentFeed(2).size());
+        assertEquals(2, Solution.getStudentFeed(2, 10).size());
+        assertEquals(Integer.valueOf(1), Solution.getPost(1).getLikes());
+    }
+}
@@ -0,0 +1,103 @@
+package techbook;
+
+import techbook.business.TrendingPost;
+import techbook.data.TrendingSketch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Feeds TrendingSketch a Zipf distributed stream of likes over many posts, spread evenly over one window,
+ * and reports the time per like, the time of a top-k query, and how the estimates and the top compare with
+ * the exact counts of the stream.
+ * Run with: java techbook.TrendingSketchBenchmark [likes] [posts] [zipf exponent] [k] [epsilon]
+ */
+public class TrendingSketchBenchmark {
+
+    private static final long WINDOW = 3600000;
+
+    /**
+     * output: the cumulative distribution of a Zipf distribution over ranks 1..n with exponent s
+     */
+    private static double[] zipf(int n, double s) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int rank = 1; rank <= n; rank++) {
+            sum += 1 / Math.pow(rank, s);
+            cdf[rank - 1] = sum;
+        }
+        for (int i = 0; i < n; i++)
+            cdf[i] /= sum;
+        return cdf;
+    }
+
+    public static void main(String[] args) {
+        int likes = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int posts = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        double s = args.length > 2 ? Double.parseDouble(args[2]) : 1.1;
+        int k = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        double epsilon = args.length > 4 ? Double.parseDouble(args[4]) : 0.001;
+
+        //post ids are shuffled ranks, so the hot posts are not the lowest ids
+        double[] cdf = zipf(posts, s);
+        Random random = new Random(236363);
+        int[] ids = IntStream.rangeClosed(1, posts).toArray();
+        for (int i = posts - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+        }
+        int[] stream = new int[likes];
+        int[] exact = new int[posts + 1];
+        for (int i = 0; i < likes; i++) {
+            int rank = Arrays.binarySearch(cdf, random.nextDouble());
+            stream[i] = ids[Math.min(rank < 0 ? -rank - 1 : rank, posts - 1)];
+            exact[stream[i]]++;
+        }
+
+        AtomicLong now = new AtomicLong(0);
+        TrendingSketch sketch = new TrendingSketch(WINDOW, 12, epsilon, 0.01, 1000, now::get);
+        long start = System.nanoTime();
+        for (int i = 0; i < likes; i++) {
+            now.set(i * (WINDOW - 1) / likes);
+            sketch.liked(stream[i]);
+        }
+        long addNanos = System.nanoTime() - start;
+
+        int queries = 100000;
+        ArrayList<TrendingPost> top = null;
+        start = System.nanoTime();
+        for (int i = 0; i < queries; i++)
+            top = sketch.top(k);
+        long topNanos = System.nanoTime() - start;
+
+        Integer[] byLikes = IntStream.rangeClosed(1, posts).boxed().toArray(Integer[]::new);
+        Arrays.sort(byLikes, Comparator.comparing((Integer id) -> -exact[id]).thenComparing(id -> id));
+        HashSet<Integer> exactTop = new HashSet<>(Arrays.asList(byLikes).subList(0, k));
+        int found = 0;
+        long maxError = 0;
+        for (TrendingPost post : top) {
+            if (exactTop.contains(post.getPostId()))
+                found++;
+            maxError = Math.max(maxError, post.getLikes() - exact[post.getPostId()]);
+        }
+        int overBound = 0;
+        for (int id = 1; id <= posts; id++)
+            if (sketch.getLikes(id) > exact[id] + epsilon * likes)
+                overBound++;
+
+        System.out.printf("%d likes of %d posts, zipf s = %.2f, epsilon = %.4f%n", likes, posts, s, epsilon);
+        System.out.printf("like:       %8.1f ns%n", (double) addNanos / likes);
+        System.out.printf("top %-3d     %8.2f us%n", k, topNanos / 1e3 / queries);
+        System.out.printf("top %d recall: %d/%d, largest error in it %d (epsilon * N = %.0f)%n",
+                k, found, k, maxError, epsilon * likes);
+        System.out.printf("estimates over the bound: %d of %d posts (%.4f%%)%n",
+                overBound, posts, 100.0 * overBound / posts);
+    }
+}
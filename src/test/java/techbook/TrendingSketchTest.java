@@ -0,0 +1,99 @@
+package techbook;
+
+import org.junit.Test;
+import techbook.business.TrendingPost;
+import techbook.data.TrendingSketch;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrendingSketchTest {
+
+    private static final long MINUTE = 60000;
+
+    @Test
+    public void slidingWindowTest() {
+        AtomicLong now = new AtomicLong(1000 * MINUTE);
+        TrendingSketch sketch = new TrendingSketch(60 * MINUTE, 6, 0.001, 0.01, 10, now::get);
+        for (int i = 0; i < 30; i++)
+            sketch.liked(1);
+        for (int i = 0; i < 20; i++)
+            sketch.liked(2);
+        now.addAndGet(30 * MINUTE);
+        for (int i = 0; i < 25; i++)
+            sketch.liked(3);
+        //the unlike is taken off the pane of the likes, 30 minutes back
+        sketch.unliked(1);
+        ArrayList<TrendingPost> top = sketch.top(2);
+        assertEquals(2, top.size());
+        assertEquals(Integer.valueOf(1), top.get(0).getPostId());
+        assertEquals(Long.valueOf(29), top.get(0).getLikes());
+        assertEquals(Integer.valueOf(3), top.get(1).getPostId());
+
+        //the first likes leave the window, and unlikes of posts without likes in it are ignored
+        now.addAndGet(40 * MINUTE);
+        sketch.unliked(1);
+        top = sketch.top(10);
+        assertEquals(1, top.size());
+        assertEquals(Integer.valueOf(3), top.get(0).getPostId());
+        assertEquals(0, sketch.getLikes(1));
+        sketch.unliked(4);
+        assertEquals(25, sketch.getLikes(3));
+        sketch.unliked(3);
+        assertEquals(24, sketch.getLikes(3));
+        now.addAndGet(60 * MINUTE);
+        assertTrue(sketch.top(10).isEmpty());
+    }
+
+    @Test
+    public void resetTest() {
+        //the window is placed by the clock of the sketch alone, so a like right after a reset counts
+        AtomicLong now = new AtomicLong(1000 * MINUTE);
+        TrendingSketch sketch = new TrendingSketch(60 * MINUTE, 6, 0.001, 0.01, 10, now::get);
+        sketch.liked(1);
+        sketch.reset();
+        //no counter goes below zero
+        sketch.unliked(1);
+        assertEquals(0, sketch.getLikes(1));
+        sketch.liked(1);
+        sketch.liked(1);
+        assertEquals(2, sketch.getLikes(1));
+        assertEquals(Long.valueOf(2), sketch.top(1).get(0).getLikes());
+    }
+
+    @Test
+    public void errorBoundTest() {
+        //a power law stream (P(post >= n) = 1/n) over many posts:
+        //estimates are never low, and rarely more than epsilon * N high
+        double epsilon = 0.001;
+        AtomicLong now = new AtomicLong(0);
+        TrendingSketch sketch = new TrendingSketch(60 * MINUTE, 12, epsilon, 0.01, 100, now::get);
+        long counters = sketch.memoryBytes();
+        int posts = 100000;
+        int likes = 200000;
+        int[] exact = new int[posts + 1];
+        Random random = new Random(236363);
+        for (int i = 0; i < likes; i++) {
+            int post = (int) Math.min(posts, Math.floor(1 / (1 - random.nextDouble())));
+            exact[post]++;
+            sketch.liked(post);
+        }
+        int over = 0;
+        for (int post = 1; post <= 1000; post++) {
+            long estimate = sketch.getLikes(post);
+            assertTrue(estimate >= exact[post]);
+            if (estimate > exact[post] + epsilon * likes)
+                over++;
+        }
+        assertTrue(over + " estimates over the bound", over <= 20);
+        //the memory does not grow with the likes, only up to the candidates
+        assertTrue(sketch.memoryBytes() <= counters + 100 * TrendingSketch.CANDIDATE_BYTES);
+        ArrayList<TrendingPost> top = sketch.top(10);
+        for (int i = 0; i < 10; i++)
+            assertEquals(Integer.valueOf(i + 1), top.get(i).getPostId());
+    }
+}
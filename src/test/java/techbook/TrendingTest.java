@@ -0,0 +1,99 @@
+package techbook;
+
+import org.junit.Test;
+import techbook.business.Feed;
+import techbook.business.TrendingPost;
+import techbook.data.DBConnector;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static techbook.business.ReturnValue.*;
+
+public class TrendingTest extends AbstractTest {
+
+    private static void assertTrending(Feed trending, int... idsAndLikes) {
+        assertEquals(idsAndLikes.length / 2, trending.size());
+        for (int i = 0; i < trending.size(); i++) {
+            assertEquals(Integer.valueOf(idsAndLikes[2 * i]), trending.get(i).getId());
+            assertEquals(Integer.valueOf(idsAndLikes[2 * i + 1]), trending.get(i).getLikes());
+        }
+    }
+
+    private static void addPost(int id, String groupName) {
+        LocalDateTime date = LocalDateTime.of(2018, 1, 1, 12, id);
+        assertEquals(OK, Solution.addPost(buildPost(id, 1, "post " + id, date), groupName));
+    }
+
+    @Test
+    public void trendingPostsTest() throws SQLException {
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(OK, Solution.addStudent(buildStudent(i, i <= 2 ? "chess" : "CS")));
+        }
+        addPost(1, null);
+        addPost(2, null);
+        addPost(3, null);
+        addPost(4, "chess");
+        for (int i = 3; i <= 5; i++)
+            assertEquals(OK, Solution.likePost(i, 1));
+        assertEquals(OK, Solution.likePost(3, 2));
+        assertEquals(OK, Solution.likePost(4, 2));
+        assertEquals(OK, Solution.likePost(5, 3));
+        assertEquals(OK, Solution.likePost(1, 4));
+        assertEquals(OK, Solution.likePost(2, 4));
+
+        Duration hour = Duration.ofHours(1);
+        assertTrending(Solution.getTrendingPosts(hour, 2), 1, 3, 2, 2);
+        assertTrending(Solution.getTrendingPosts(hour, 10, "chess"), 4, 2);
+        assertTrending(Solution.getTrendingPosts(hour, 10, "go"));
+
+        assertEquals(OK, Solution.unlikePost(3, 1));
+        assertEquals(OK, Solution.unlikePost(4, 1));
+        assertTrending(Solution.getTrendingPosts(hour, 2), 2, 2, 1, 1);
+
+        //likes made two hours ago are out of the last hour, and in the last three
+        try (Connection c = DBConnector.getConnection()) {
+            c.createStatement().execute("UPDATE LikeBuckets SET bucket = bucket - INTERVAL '2 hours'");
+        }
+        assertTrending(Solution.getTrendingPosts(hour, 10));
+        assertTrending(Solution.getTrendingPosts(Duration.ofHours(3), 10), 2, 2, 1, 1, 3, 1);
+        assertEquals(OK, Solution.likePost(3, 3));
+        assertTrending(Solution.getTrendingPosts(hour, 10), 3, 1);
+
+        assertEquals(OK, Solution.deletePost(2));
+        assertTrending(Solution.getTrendingPosts(Duration.ofHours(3), 10), 3, 2, 1, 1);
+    }
+
+    @Test
+    public void sketchedTrendingPostsTest() {
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(OK, Solution.addStudent(buildStudent(i, i == 1 ? "chess" : "CS")));
+        }
+        addPost(1, null);
+        addPost(2, null);
+        addPost(3, "chess");
+        for (int i = 1; i <= 4; i++)
+            assertEquals(OK, Solution.likePost(i, 2));
+        assertEquals(OK, Solution.likePost(1, 1));
+        assertEquals(OK, Solution.likePost(2, 1));
+        assertEquals(OK, Solution.likePost(1, 3));
+        assertEquals(OK, Solution.unlikePost(2, 2));
+
+        //posts of groups are not ranked
+        ArrayList<TrendingPost> top = Solution.getTrendingPostsEstimate(10);
+        assertEquals(2, top.size());
+        assertEquals(Integer.valueOf(2), top.get(0).getPostId());
+        assertEquals(Long.valueOf(3), top.get(0).getLikes());
+        assertEquals(Integer.valueOf(1), top.get(1).getPostId());
+        assertEquals(Long.valueOf(2), top.get(1).getLikes());
+
+        assertEquals(OK, Solution.deletePost(2));
+        assertEquals(1, Solution.getTrendingPostsEstimate(10).size());
+        Solution.clearTables();
+        assertEquals(0, Solution.getTrendingPostsEstimate(10).size());
+    }
+}